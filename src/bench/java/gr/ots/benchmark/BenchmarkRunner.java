@@ -0,0 +1,65 @@
+package gr.ots.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+// Starts the packaged application on an in-memory H2 database, seeds it over HTTP and runs every benchmark.
+// One JSON result file is written per benchmark and thread count so that two releases can be diffed file by file.
+// Row contention is measured last, against one application per stock update mode.
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        String app = System.getProperty("bench.app", "target/quarkus-app/quarkus-run.jar");
+        int drugs = Integer.getInteger("bench.drugs", 1000);
+        int transfers = Integer.getInteger("bench.transfers", 100_000);
+        int port = Integer.getInteger("bench.port", 8089);
+        Path output = Path.of(System.getProperty("bench.output", "target/jmh"));
+        int[] threads = Arrays.stream(System.getProperty("bench.threads", "1,8,64").split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+
+        Files.createDirectories(output);
+
+        try (WarehouseApplication application = WarehouseApplication.start(app, port, output.resolve("application.log"))) {
+            application.seed(drugs, transfers);
+
+            for (int threadCount : threads) {
+                run(output, "http", threadCount, application.url(), CreateTransferBenchmark.class, ListingBenchmark.class, TransferFilterBenchmark.class);
+            }
+            // in-process benchmarks do not depend on the application, a single thread is enough
+            run(output, "local", 1, application.url(), JsonbSerializationBenchmark.class, ExceptionMapperBenchmark.class);
+        }
+
+        // the stock update mode is fixed at startup, one application per mode on a single seeded drug
+        for (String mode : List.of("OPTIMISTIC", "ATOMIC")) {
+            try (WarehouseApplication application = WarehouseApplication.start(app, port,
+                    output.resolve("contention-" + mode.toLowerCase() + ".log"), "warehouse.stock-update-mode=" + mode)) {
+                application.seed(1, 0);
+                for (int threadCount : threads) {
+                    run(output, "contention-" + mode.toLowerCase(), threadCount, application.url(), StockContentionBenchmark.class);
+                }
+            }
+        }
+    }
+
+    private static void run(Path output, String group, int threads, String url, Class<?>... benchmarks) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .threads(threads)
+                .jvmArgsAppend("-Dbench.url=" + url)
+                .resultFormat(ResultFormatType.JSON)
+                .result(output.resolve(group + "-" + threads + "t.json").toString());
+        for (Class<?> benchmark : benchmarks) {
+            options.include(benchmark.getName());
+        }
+        new Runner(options.build()).run();
+    }
+}
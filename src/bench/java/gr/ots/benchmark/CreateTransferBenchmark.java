@@ -0,0 +1,40 @@
+package gr.ots.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// POST /warehouse/transfer, either every thread on the same drug (row contention) or on random drugs
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class CreateTransferBenchmark {
+
+    @Param({"ONE_DRUG", "MANY_DRUGS"})
+    public String target;
+
+    private WarehouseClient client;
+
+    private long[] drugIds;
+
+    @Setup
+    public void setup() {
+        client = WarehouseClient.fromSystemProperties();
+        List<Long> ids = client.drugIds();
+        drugIds = target.equals("ONE_DRUG")
+                ? new long[]{ids.getFirst()}
+                : ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // IN transfers never run out of stock, rejected conflicts still count as completed requests
+    @Benchmark
+    public int createTransfer() {
+        long drugId = drugIds[ThreadLocalRandom.current().nextInt(drugIds.length)];
+        return client.post("/warehouse/transfer", "{\"type\":\"IN\",\"drugId\":" + drugId + ",\"quantity\":1}");
+    }
+}
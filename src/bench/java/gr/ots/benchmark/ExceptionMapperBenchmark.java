@@ -0,0 +1,100 @@
+package gr.ots.benchmark;
+
+import gr.ots.config.AllExceptionMapper;
+import gr.ots.config.ErrorMetrics;
+import gr.ots.config.NullPointerExceptionMapper;
+import gr.ots.config.WarehouseExceptionMapper;
+import gr.ots.pharmacy.warehouse.control.WarehouseError;
+import gr.ots.pharmacy.warehouse.control.WarehouseException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.json.bind.JsonbBuilder;
+import jakarta.ws.rs.core.Response;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Cost of a rejected request between the service throwing and the mapper producing the 400 response. The throw*
+// benchmarks throw from depth frames down, a rejection inside a Quarkus request has well over a hundred below it.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExceptionMapperBenchmark {
+
+    @Param({"10", "150"})
+    public int depth;
+
+    private final AllExceptionMapper allExceptionMapper = new AllExceptionMapper();
+
+    private final NullPointerExceptionMapper nullPointerExceptionMapper = new NullPointerExceptionMapper();
+
+    private WarehouseExceptionMapper warehouseExceptionMapper;
+
+    private final IllegalArgumentException preallocated = new IllegalArgumentException("Insufficient stock");
+
+    // outside of CDI the mappers get the metrics injected by hand, the counters are part of what is measured
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        ErrorMetrics errorMetrics = new ErrorMetrics(new SimpleMeterRegistry());
+        inject(allExceptionMapper, "errorMetrics", errorMetrics);
+        inject(nullPointerExceptionMapper, "errorMetrics", errorMetrics);
+        warehouseExceptionMapper = new WarehouseExceptionMapper(errorMetrics, JsonbBuilder.create());
+    }
+
+    private static void inject(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private static <E extends RuntimeException> void throwAt(int depth, Supplier<E> exception) {
+        if (depth > 0) {
+            throwAt(depth - 1, exception);
+            return;
+        }
+        throw exception.get();
+    }
+
+    // mapping only, the exception already exists
+    @Benchmark
+    public Response mapBusinessError() {
+        return allExceptionMapper.toResponse(preallocated);
+    }
+
+    @Benchmark
+    public Response mapWarehouseError() {
+        return warehouseExceptionMapper.toResponse(WarehouseError.INSUFFICIENT_STOCK.exception());
+    }
+
+    // what a rejected transfer used to pay, including filling in the stack trace
+    @Benchmark
+    public Response throwAndMapBusinessError() {
+        try {
+            throwAt(depth, () -> new IllegalArgumentException("Insufficient stock"));
+            return null;
+        } catch (IllegalArgumentException e) {
+            return allExceptionMapper.toResponse(e);
+        }
+    }
+
+    // what it pays now, a preallocated stackless exception and a cached body
+    @Benchmark
+    public Response throwAndMapWarehouseError() {
+        try {
+            throwAt(depth, WarehouseError.INSUFFICIENT_STOCK::exception);
+            return null;
+        } catch (WarehouseException e) {
+            return warehouseExceptionMapper.toResponse(e);
+        }
+    }
+
+    @Benchmark
+    public Response mapNullPointer() {
+        return nullPointerExceptionMapper.toResponse(
+                new NullPointerException("Cannot invoke \"gr.ots.pharmacy.warehouse.boundary.TransferCreateDTO.type()\" because \"dto\" is null"));
+    }
+}
@@ -0,0 +1,117 @@
+package gr.ots.benchmark;
+
+import gr.ots.config.ColumnarJsonWriter;
+import gr.ots.config.InstantEpochMillisAdapter;
+import gr.ots.pharmacy.warehouse.control.PagedResult;
+import gr.ots.pharmacy.warehouse.entity.Category;
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import gr.ots.pharmacy.warehouse.entity.Transfer;
+import gr.ots.pharmacy.warehouse.entity.TransferType;
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+import jakarta.json.bind.JsonbConfig;
+import jakarta.ws.rs.core.GenericType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// Serialisation of a full transfer page with the same adapters JsonbCustomizer registers in the application, as JSON-B
+// or as the columnar layout, optionally gzipped like quarkus.http.enable-compression does. The bytes on the wire of
+// every combination are printed once per trial.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonbSerializationBenchmark {
+
+    // a page references fewer drugs than it has transfers, the columnar layout sends each of them once
+    private static final int DRUGS_PER_PAGE = 10;
+
+    // the writer picks its layout from the item type, as the resource method declares it
+    private static final Type PAGE_TYPE = new GenericType<PagedResult<Transfer>>() {
+    }.getType();
+
+    @Param({"10", "50"})
+    public int limit;
+
+    @Param({"json", "columnar"})
+    public String format;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    private Jsonb jsonb;
+
+    private final ColumnarJsonWriter columnarJsonWriter = new ColumnarJsonWriter();
+
+    private PagedResult<Transfer> page;
+
+    @Setup
+    public void setup() throws IOException {
+        jsonb = JsonbBuilder.create(new JsonbConfig().withAdapters(new InstantEpochMillisAdapter()));
+
+        Category category = new Category();
+        category.id = 42L;
+        category.setName("CAT_42");
+        category.setCreatedAt(Instant.now());
+
+        List<Drug> drugs = new ArrayList<>(DRUGS_PER_PAGE);
+        for (int i = 0; i < DRUGS_PER_PAGE; i++) {
+            Drug drug = new Drug();
+            drug.id = (long) i;
+            drug.setName("Bench Drug " + i);
+            drug.setCode("BENCH" + i);
+            drug.setPrice(new BigDecimal("9.99"));
+            drug.setStock(1000);
+            drug.setCategory(category);
+            drug.setCreatedAt(Instant.now());
+            drugs.add(drug);
+        }
+
+        List<Transfer> transfers = new ArrayList<>(limit);
+        for (int i = 0; i < limit; i++) {
+            Drug drug = drugs.get(i % DRUGS_PER_PAGE);
+
+            Transfer transfer = new Transfer();
+            transfer.id = (long) i;
+            transfer.setType(i % 2 == 0 ? TransferType.IN : TransferType.OUT);
+            transfer.setDrug(drug);
+            transfer.setQuantity(i + 1);
+            transfer.setTransferDate(Instant.now());
+            transfer.setCreatedAt(Instant.now());
+            transfers.add(transfer);
+        }
+        page = new PagedResult<>(1, limit, 10_000L, 10_000 / limit, true, null, transfers);
+
+        System.out.printf("Page of %d transfers as %s%s: %d bytes%n", limit, format, gzip ? " (gzip)" : "", serializePage().length);
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+        try (OutputStream out = gzip ? new GZIPOutputStream(bytes) : bytes) {
+            if (format.equals("columnar")) {
+                columnarJsonWriter.writeTo(page, PagedResult.class, PAGE_TYPE, null, null, null, out);
+            } else {
+                jsonb.toJson(page, out);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        jsonb.close();
+    }
+}
@@ -0,0 +1,35 @@
+package gr.ots.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// GET /warehouse and GET /warehouse/transfer at a shallow and at deep offsets
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class ListingBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int page;
+
+    private WarehouseClient client;
+
+    @Setup
+    public void setup() {
+        client = WarehouseClient.fromSystemProperties();
+    }
+
+    @Benchmark
+    public int getTransfers() {
+        return client.get("/warehouse/transfer?limit=50&page=" + page);
+    }
+
+    @Benchmark
+    public int getAllDrugs() {
+        return client.get("/warehouse?limit=50&page=" + page);
+    }
+}
@@ -0,0 +1,107 @@
+package gr.ots.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Closed-loop load test: bench.clients concurrent clients (default 1000) each keep one request in flight against the
+// transfer listing and a transfer insert, once with the endpoints on virtual threads and once on the worker pool.
+// Writes p50/p99 latency, throughput and the peak number of requests in flight per mode to load-<mode>.json.
+public class LoadTest {
+
+    private record Report(String mode, int clients, long requests, long errors, double throughputPerSecond,
+                          double p50Millis, double p99Millis, double maxMillis, int peakInFlight) {
+
+        String toJson() {
+            return String.format(Locale.ROOT,
+                    "{\"mode\":\"%s\",\"clients\":%d,\"requests\":%d,\"errors\":%d,\"throughputPerSecond\":%.1f,"
+                            + "\"p50Millis\":%.2f,\"p99Millis\":%.2f,\"maxMillis\":%.2f,\"peakInFlight\":%d}",
+                    mode, clients, requests, errors, throughputPerSecond, p50Millis, p99Millis, maxMillis, peakInFlight);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String app = System.getProperty("bench.app", "target/quarkus-app/quarkus-run.jar");
+        int clients = Integer.getInteger("bench.clients", 1000);
+        Duration duration = Duration.ofSeconds(Integer.getInteger("bench.seconds", 30));
+        int port = Integer.getInteger("bench.port", 8089);
+        Path output = Path.of(System.getProperty("bench.output", "target/jmh"));
+
+        Files.createDirectories(output);
+
+        for (String mode : List.of("virtual-threads", "worker-pool")) {
+            boolean virtualThreads = mode.equals("virtual-threads");
+            try (WarehouseApplication application = WarehouseApplication.start(app, port, output.resolve("load-" + mode + ".log"),
+                    "quarkus.virtual-threads.enabled=" + virtualThreads)) {
+                application.seed(Integer.getInteger("bench.drugs", 1000), Integer.getInteger("bench.transfers", 100_000));
+                Report report = run(mode, new WarehouseClient(application.url()), clients, duration);
+                Files.writeString(output.resolve("load-" + mode + ".json"), report.toJson());
+                System.out.println(report.toJson());
+            }
+        }
+    }
+
+    private static Report run(String mode, WarehouseClient client, int clients, Duration duration) {
+        List<Long> drugIds = client.drugIds();
+        ConcurrentLinkedQueue<long[]> latencies = new ConcurrentLinkedQueue<>();
+        LongAdder errors = new LongAdder();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peakInFlight = new AtomicInteger();
+
+        long deadline = System.nanoTime() + duration.toNanos();
+        // virtual threads on the client side so that the load generator itself is not the bottleneck
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                executor.submit(() -> {
+                    long[] samples = new long[1 << 16];
+                    int count = 0;
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                        long start = System.nanoTime();
+                        int status;
+                        try {
+                            status = random.nextInt(10) == 0
+                                    ? client.post("/warehouse/transfer", "{\"type\":\"IN\",\"drugId\":"
+                                    + drugIds.get(random.nextInt(drugIds.size())) + ",\"quantity\":1}")
+                                    : client.get("/warehouse/transfer?withTotals=false&limit=10");
+                        } catch (RuntimeException e) {
+                            status = -1;
+                        } finally {
+                            inFlight.decrementAndGet();
+                        }
+                        if (status != 200) {
+                            errors.increment();
+                        }
+                        if (count == samples.length) {
+                            samples = Arrays.copyOf(samples, count * 2);
+                        }
+                        samples[count++] = System.nanoTime() - start;
+                    }
+                    latencies.add(Arrays.copyOf(samples, count));
+                });
+            }
+        }
+
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        if (all.length == 0) {
+            throw new IllegalStateException("No request completed");
+        }
+        return new Report(mode, clients, all.length, errors.sum(), all.length / (double) duration.toSeconds(),
+                millis(all[(int) (all.length * 0.50)]), millis(all[(int) (all.length * 0.99)]), millis(all[all.length - 1]),
+                peakInFlight.get());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,47 @@
+package gr.ots.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// POST /warehouse/transfer, every thread on the same drug row. BenchmarkRunner starts the application
+// once per warehouse.stock-update-mode, the counters tell the created transfers from the ones rejected on a conflict
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class StockContentionBenchmark {
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+
+        public long created;
+
+        public long rejected;
+    }
+
+    private WarehouseClient client;
+
+    private long drugId;
+
+    @Setup
+    public void setup() {
+        client = WarehouseClient.fromSystemProperties();
+        drugId = client.drugIds().getFirst();
+    }
+
+    // IN transfers never run out of stock, a rejection is a lost version check
+    @Benchmark
+    public int createTransfer(Outcomes outcomes) {
+        int status = client.post("/warehouse/transfer", "{\"type\":\"IN\",\"drugId\":" + drugId + ",\"quantity\":1}");
+        if (status == 200) {
+            outcomes.created++;
+        } else {
+            outcomes.rejected++;
+        }
+        return status;
+    }
+}
@@ -0,0 +1,56 @@
+package gr.ots.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// GET /warehouse/transfer filtered by a varying number of drugs and a date range, without totals so that every call
+// plans and runs its query instead of hitting CountCache. The query plan cache hit ratio is printed after the trial.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TransferFilterBenchmark {
+
+    // the number of drugIds of each call is drawn from 1 up to this
+    @Param({"1", "20"})
+    public int maxDrugs;
+
+    private WarehouseClient client;
+
+    private List<Long> drugIds;
+
+    private String range;
+
+    @Setup
+    public void setup() {
+        client = WarehouseClient.fromSystemProperties();
+        drugIds = client.drugIds();
+        Instant now = Instant.now();
+        range = "&from=" + now.minus(30, ChronoUnit.DAYS) + "&to=" + now.plus(1, ChronoUnit.DAYS);
+    }
+
+    @Benchmark
+    public int getTransfers() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int count = random.nextInt(1, maxDrugs + 1);
+        String drugs = random.ints(count, 0, drugIds.size())
+                .mapToObj(index -> "&drugIds=" + drugIds.get(index))
+                .collect(Collectors.joining());
+        return client.get("/warehouse/transfer?limit=50&withTotals=false" + drugs + range);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.getString("/q/metrics").lines()
+                .filter(line -> line.startsWith("warehouse_query_plan_cache"))
+                .forEach(System.out::println);
+    }
+}
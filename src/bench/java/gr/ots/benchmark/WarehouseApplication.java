@@ -0,0 +1,101 @@
+package gr.ots.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.ThreadLocalRandom;
+
+// The packaged application running as a child process on an in-memory H2 database
+final class WarehouseApplication implements AutoCloseable {
+
+    private static final int BATCH_SIZE = 5000;
+
+    private final Process process;
+
+    private final WarehouseClient client;
+
+    private final String url;
+
+    private WarehouseApplication(Process process, String url) {
+        this.process = process;
+        this.url = url;
+        this.client = new WarehouseClient(url);
+    }
+
+    static WarehouseApplication start(String app, int port, Path log, String... systemProperties) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(List.of("java",
+                "-Dquarkus.http.port=" + port,
+                "-Dquarkus.datasource.jdbc.url=jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1",
+                "-Dquarkus.log.file.enable=false"));
+        for (String property : systemProperties) {
+            command.add("-D" + property);
+        }
+        command.addAll(List.of("-jar", app));
+
+        Process process = new ProcessBuilder(command)
+                .redirectOutput(log.toFile())
+                .redirectErrorStream(true)
+                .start();
+        WarehouseApplication application = new WarehouseApplication(process, "http://localhost:" + port);
+        try {
+            application.awaitStartup();
+        } catch (RuntimeException | InterruptedException e) {
+            application.close();
+            throw e;
+        }
+        return application;
+    }
+
+    String url() {
+        return url;
+    }
+
+    void seed(int drugs, int transfers) {
+        List<Long> drugIds = new ArrayList<>(drugs);
+        for (int i = 0; i < drugs; i++) {
+            drugIds.add(client.postForId("/warehouse", String.format(
+                    "{\"name\":\"Bench Drug %d\",\"code\":\"BENCH%07d\",\"price\":9.99,\"stock\":1000000,\"categoryId\":42}", i, i)));
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int seeded = 0; seeded < transfers; seeded += BATCH_SIZE) {
+            StringJoiner batch = new StringJoiner(",", "[", "]");
+            for (int line = 0; line < Math.min(BATCH_SIZE, transfers - seeded); line++) {
+                long drugId = drugIds.get(random.nextInt(drugIds.size()));
+                batch.add("{\"type\":\"IN\",\"drugId\":" + drugId + ",\"quantity\":1}");
+            }
+            int status = client.post("/warehouse/transfer/batch", batch.toString());
+            if (status != 200) {
+                throw new IllegalStateException("Seeding transfers failed with " + status);
+            }
+        }
+    }
+
+    private void awaitStartup() throws InterruptedException {
+        Instant deadline = Instant.now().plus(Duration.ofMinutes(1));
+        while (Instant.now().isBefore(deadline)) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Application exited with " + process.exitValue());
+            }
+            try {
+                if (client.get("/warehouse?limit=1") == 200) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                // not listening yet
+            }
+            Thread.sleep(250);
+        }
+        throw new IllegalStateException("Application did not start within a minute");
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        process.waitFor();
+    }
+}
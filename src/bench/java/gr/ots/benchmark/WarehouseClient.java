@@ -0,0 +1,96 @@
+package gr.ots.benchmark;
+
+import jakarta.json.Json;
+import jakarta.json.JsonReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Minimal HTTP client for the running application, shared by the runner and the HTTP benchmarks
+final class WarehouseClient {
+
+    private final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    private final String baseUrl;
+
+    WarehouseClient(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    static WarehouseClient fromSystemProperties() {
+        return new WarehouseClient(System.getProperty("bench.url", "http://localhost:8089"));
+    }
+
+    int get(String path) {
+        return send(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    String getString(String path) {
+        return send(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    int post(String path, String json) {
+        return send(postRequest(path, json), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    long postForId(String path, String json) {
+        HttpResponse<String> response = send(postRequest(path, json), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("POST " + path + " returned " + response.statusCode() + ": " + response.body());
+        }
+        try (JsonReader reader = Json.createReader(new StringReader(response.body()))) {
+            return reader.readObject().getJsonNumber("id").longValue();
+        }
+    }
+
+    // ids of every drug in the catalogue, read from the NDJSON export
+    List<Long> drugIds() {
+        HttpResponse<InputStream> response = send(HttpRequest.newBuilder(uri("/warehouse/export?format=ndjson")).GET().build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        List<Long> ids = new ArrayList<>();
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                try (JsonReader reader = Json.createReader(new StringReader(line))) {
+                    ids.add(reader.readObject().getJsonNumber("id").longValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ids;
+    }
+
+    private HttpRequest postRequest(String path, String json) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        try {
+            return http.send(request, handler);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,38 +1,59 @@
 package gr.ots.config;
 
 import io.quarkus.hibernate.validator.runtime.jaxrs.ViolationReport;
+import jakarta.inject.Inject;
+import jakarta.persistence.OptimisticLockException;
 import jakarta.validation.ConstraintViolationException;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.ext.ExceptionMapper;
 import jakarta.ws.rs.ext.Provider;
-import org.h2.jdbc.JdbcSQLIntegrityConstraintViolationException;
+import org.hibernate.StaleStateException;
 
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.util.List;
 
 @Provider
 // TODO: this needs to be done better
 public class AllExceptionMapper implements ExceptionMapper<Exception> {
 
+    private static final ViolationReport DUPLICATION = new ViolationReport("Constraint Violation",
+            Response.Status.BAD_REQUEST,
+            List.of(new ViolationReport.Violation(null, "Duplication found")));
+
+    private static final ViolationReport CONFLICT = new ViolationReport("Conflict",
+            Response.Status.CONFLICT,
+            List.of(new ViolationReport.Violation(null, "Concurrent modification, retry the request")));
+
+    @Inject
+    private ConstraintViolationExceptionMapper constraintViolationExceptionMapper;
+
+    @Inject
+    private ErrorMetrics errorMetrics;
+
     @Override
     public Response toResponse(Exception exception) {
-        if (exception.getCause() != null && exception.getCause().getCause() != null && exception.getCause().getCause().getCause() != null) {
-            Throwable cause = exception.getCause().getCause().getCause();
-
-            if (cause instanceof JdbcSQLIntegrityConstraintViolationException) {
-                ViolationReport constraintViolation = new ViolationReport("Constraint Violation",
-                        Response.Status.BAD_REQUEST,
-                        List.of(new ViolationReport.Violation(null, "Duplication found")));
-                return Response.status(Response.Status.BAD_REQUEST)
-                        .type(MediaType.APPLICATION_JSON)
-                        .entity(constraintViolation)
-                        .header("validation-exception", "true")
-                        .build();
-            }
+        if (isIntegrityViolation(exception)) {
+            errorMetrics.handled(AllExceptionMapper.class, exception);
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .type(MediaType.APPLICATION_JSON)
+                    .entity(DUPLICATION)
+                    .header("validation-exception", "true")
+                    .build();
+        }
+        // a transfer that lost the version check of its drug is worth retrying, unlike a bad request
+        if (isOptimisticLockConflict(exception)) {
+            errorMetrics.handled(AllExceptionMapper.class, exception);
+            return Response.status(Response.Status.CONFLICT)
+                    .type(MediaType.APPLICATION_JSON)
+                    .entity(CONFLICT)
+                    .header("validation-exception", "true")
+                    .build();
         }
         if (exception.getCause() != null && exception.getCause().getCause() instanceof jakarta.validation.ConstraintViolationException) {
-            return new ConstraintViolationExceptionMapper().toResponse((ConstraintViolationException) exception.getCause().getCause());
+            return constraintViolationExceptionMapper.toResponse((ConstraintViolationException) exception.getCause().getCause());
         }
+        errorMetrics.handled(AllExceptionMapper.class, exception);
         return Response.status(Response.Status.BAD_REQUEST)
                 .type(MediaType.APPLICATION_JSON)
                 .entity(buildSimpleViolationReport(exception))
@@ -40,6 +61,26 @@ public class AllExceptionMapper implements ExceptionMapper<Exception> {
                 .build();
     }
 
+    // Hibernate translates the SQLState of every dialect, the JDBC subclass covers drivers that report it directly (H2)
+    private static boolean isIntegrityViolation(Throwable exception) {
+        for (Throwable cause = exception.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof org.hibernate.exception.ConstraintViolationException
+                    || cause instanceof SQLIntegrityConstraintViolationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isOptimisticLockConflict(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockException || cause instanceof StaleStateException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private ViolationReport buildSimpleViolationReport(Exception exception) {
         return new ViolationReport("Constraint Violation",
                 Response.Status.BAD_REQUEST,
@@ -0,0 +1,200 @@
+package gr.ots.config;
+
+import gr.ots.pharmacy.warehouse.boundary.WarehouseResource;
+import gr.ots.pharmacy.warehouse.control.PagedResult;
+import gr.ots.pharmacy.warehouse.control.TransferView;
+import gr.ots.pharmacy.warehouse.entity.Category;
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import gr.ots.pharmacy.warehouse.entity.Transfer;
+import jakarta.json.Json;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyWriter;
+import jakarta.ws.rs.ext.Provider;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Compact layout of a page, negotiated with Accept: application/vnd.ots.columnar+json. Every attribute is one array
+// with a value per item, and the drugs and categories the items reference are sent once per page in tables of their
+// own instead of nested into every item. Instants are epoch millis, like InstantEpochMillisAdapter writes them. The
+// layout follows the declared item type of the page, so an empty page has the same columns and tables as a full one.
+@Provider
+@Produces(WarehouseResource.APPLICATION_COLUMNAR_JSON)
+public class ColumnarJsonWriter implements MessageBodyWriter<PagedResult<?>> {
+
+    private static final List<Class<?>> LAYOUTS = List.of(Transfer.class, TransferView.class, Drug.class);
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return PagedResult.class.isAssignableFrom(type) && LAYOUTS.contains(itemType(genericType));
+    }
+
+    @Override
+    public void writeTo(PagedResult<?> result, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) {
+        try (JsonGenerator generator = Json.createGenerator(new NonClosingOutputStream(entityStream))) {
+            generator.writeStartObject()
+                    .write("page", result.page())
+                    .write("limit", result.limit());
+            value(generator, "totalItems", result.totalItems());
+            value(generator, "totalPages", result.totalPages());
+            generator.write("hasNext", result.hasNext());
+            value(generator, "nextCursor", result.nextCursor());
+
+            List<?> items = result.items();
+            Class<?> itemType = itemType(genericType);
+            if (itemType == Transfer.class) {
+                writeTransfers(generator, cast(items));
+            } else if (itemType == TransferView.class) {
+                writeTransferViews(generator, cast(items));
+            } else {
+                writeDrugs(generator, "items", cast(items));
+            }
+            generator.writeEnd();
+        }
+    }
+
+    private static void writeTransfers(JsonGenerator generator, List<Transfer> transfers) {
+        generator.writeStartObject("items");
+        column(generator, "id", transfers, transfer -> transfer.id);
+        column(generator, "type", transfers, Transfer::getType);
+        column(generator, "drugId", transfers, transfer -> transfer.getDrug().id);
+        column(generator, "quantity", transfers, Transfer::getQuantity);
+        column(generator, "transferDate", transfers, Transfer::getTransferDate);
+        column(generator, "idempotencyKey", transfers, Transfer::getIdempotencyKey);
+        column(generator, "createdAt", transfers, Transfer::getCreatedAt);
+        column(generator, "updatedAt", transfers, Transfer::getUpdatedAt);
+        column(generator, "version", transfers, Transfer::getVersion);
+        generator.writeEnd();
+
+        writeDrugs(generator, "drugs", distinct(transfers, transfer -> transfer.getDrug().id).stream()
+                .map(Transfer::getDrug)
+                .toList());
+    }
+
+    private static void writeTransferViews(JsonGenerator generator, List<TransferView> views) {
+        generator.writeStartObject("items");
+        column(generator, "id", views, TransferView::id);
+        column(generator, "type", views, TransferView::type);
+        column(generator, "drugId", views, TransferView::drugId);
+        column(generator, "quantity", views, TransferView::quantity);
+        column(generator, "transferDate", views, TransferView::transferDate);
+        column(generator, "createdAt", views, TransferView::createdAt);
+        generator.writeEnd();
+
+        List<TransferView> drugs = distinct(views, TransferView::drugId);
+        generator.writeStartObject("drugs");
+        column(generator, "id", drugs, TransferView::drugId);
+        column(generator, "code", drugs, TransferView::drugCode);
+        column(generator, "name", drugs, TransferView::drugName);
+        generator.writeEnd();
+    }
+
+    private static void writeDrugs(JsonGenerator generator, String name, List<Drug> drugs) {
+        generator.writeStartObject(name);
+        column(generator, "id", drugs, drug -> drug.id);
+        column(generator, "name", drugs, Drug::getName);
+        column(generator, "code", drugs, Drug::getCode);
+        column(generator, "price", drugs, Drug::getPrice);
+        column(generator, "stock", drugs, Drug::getStock);
+        column(generator, "reorderLevel", drugs, Drug::getReorderLevel);
+        column(generator, "lowStock", drugs, Drug::isLowStock);
+        column(generator, "categoryId", drugs, drug -> drug.getCategory().id);
+        column(generator, "createdAt", drugs, Drug::getCreatedAt);
+        column(generator, "updatedAt", drugs, Drug::getUpdatedAt);
+        column(generator, "version", drugs, Drug::getVersion);
+        generator.writeEnd();
+
+        List<Category> categories = distinct(drugs, drug -> drug.getCategory().id).stream()
+                .map(Drug::getCategory)
+                .toList();
+        generator.writeStartObject("categories");
+        column(generator, "id", categories, category -> category.id);
+        column(generator, "name", categories, Category::getName);
+        column(generator, "createdAt", categories, Category::getCreatedAt);
+        column(generator, "updatedAt", categories, Category::getUpdatedAt);
+        column(generator, "version", categories, Category::getVersion);
+        generator.writeEnd();
+    }
+
+    private static <T> void column(JsonGenerator generator, String name, List<T> rows, Function<T, ?> attribute) {
+        generator.writeStartArray(name);
+        for (T row : rows) {
+            switch (attribute.apply(row)) {
+                case null -> generator.writeNull();
+                case Long value -> generator.write(value);
+                case Integer value -> generator.write(value);
+                case BigDecimal value -> generator.write(value);
+                case Boolean value -> generator.write(value);
+                case Instant value -> generator.write(value.toEpochMilli());
+                case Enum<?> value -> generator.write(value.name());
+                case Object value -> generator.write(value.toString());
+            }
+        }
+        generator.writeEnd();
+    }
+
+    private static void value(JsonGenerator generator, String name, Object value) {
+        switch (value) {
+            case null -> generator.writeNull(name);
+            case Long number -> generator.write(name, number);
+            case Integer number -> generator.write(name, number);
+            case Object other -> generator.write(name, other.toString());
+        }
+    }
+
+    // the first row of every id in page order, by id since an archived item carries its own drug instance
+    private static <T> List<T> distinct(Collection<T> rows, Function<T, Long> id) {
+        Map<Long, T> distinct = new LinkedHashMap<>();
+        for (T row : rows) {
+            distinct.putIfAbsent(id.apply(row), row);
+        }
+        return List.copyOf(distinct.values());
+    }
+
+    // PagedResult<Drug> of the resource method, or of a GenericEntity where the method returns a Response
+    private static Class<?> itemType(Type genericType) {
+        if (genericType instanceof ParameterizedType parameterized
+                && parameterized.getActualTypeArguments()[0] instanceof Class<?> itemType) {
+            return itemType;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> cast(List<?> items) {
+        return (List<T>) items;
+    }
+
+    // the container owns the entity stream, closing the generator must only flush it
+    private static class NonClosingOutputStream extends FilterOutputStream {
+
+        private NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package gr.ots.config;
 
+import jakarta.inject.Inject;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
 import jakarta.ws.rs.core.MediaType;
@@ -13,8 +14,12 @@ import java.util.List;
 @Provider
 public class ConstraintViolationExceptionMapper implements ExceptionMapper<ConstraintViolationException> {
 
+    @Inject
+    private ErrorMetrics errorMetrics;
+
     @Override
     public Response toResponse(ConstraintViolationException exception) {
+        errorMetrics.handled(ConstraintViolationExceptionMapper.class, exception);
         return Response.status(Response.Status.BAD_REQUEST)
                 .type(MediaType.APPLICATION_JSON)
                 .entity(buildSimpleViolationReport(exception))
@@ -0,0 +1,49 @@
+package gr.ots.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import jakarta.persistence.OptimisticLockException;
+import org.hibernate.StaleStateException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Which ExceptionMapper turned which exception into a response, plus the optimistic lock conflicts among them
+@Singleton
+public class ErrorMetrics {
+
+    private record Key(Class<?> mapper, Class<?> exception) {
+    }
+
+    private final MeterRegistry registry;
+
+    private final Map<Key, Counter> handled = new ConcurrentHashMap<>();
+
+    private final Counter conflicts;
+
+    @Inject
+    public ErrorMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.conflicts = Counter.builder("warehouse.transfer.conflicts")
+                .description("Requests rolled back because of an optimistic lock conflict")
+                .register(registry);
+    }
+
+    public void handled(Class<?> mapper, Throwable exception) {
+        handled.computeIfAbsent(new Key(mapper, exception.getClass()), key -> Counter.builder("warehouse.errors")
+                        .description("Exceptions mapped to an error response")
+                        .tag("mapper", key.mapper().getSimpleName())
+                        .tag("exception", key.exception().getSimpleName())
+                        .register(registry))
+                .increment();
+
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockException || cause instanceof StaleStateException) {
+                conflicts.increment();
+                return;
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package gr.ots.config;
 
+import jakarta.inject.Inject;
 import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
@@ -10,8 +11,13 @@ import java.util.Map;
 
 @Provider
 public class NotFoundMapper implements ExceptionMapper<NotFoundException> {
+
+    @Inject
+    private ErrorMetrics errorMetrics;
+
     @Override
     public Response toResponse(NotFoundException ex) {
+        errorMetrics.handled(NotFoundMapper.class, ex);
         return Response.status(Response.Status.NOT_FOUND)
                 .entity(Map.of("error", ex.getMessage()))
                 .type(MediaType.APPLICATION_JSON)
@@ -1,6 +1,7 @@
 package gr.ots.config;
 
 import io.quarkus.hibernate.validator.runtime.jaxrs.ViolationReport;
+import jakarta.inject.Inject;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.ext.ExceptionMapper;
@@ -11,8 +12,12 @@ import java.util.List;
 @Provider
 public class NullPointerExceptionMapper implements ExceptionMapper<NullPointerException> {
 
+    @Inject
+    private ErrorMetrics errorMetrics;
+
     @Override
     public Response toResponse(NullPointerException exception) {
+        errorMetrics.handled(NullPointerExceptionMapper.class, exception);
         return Response.status(Response.Status.BAD_REQUEST)
                 .type(MediaType.APPLICATION_JSON)
                 .entity(buildSimpleViolationReport(exception))
@@ -37,6 +42,4 @@ public class NullPointerExceptionMapper implements ExceptionMapper<NullPointerEx
                 Response.Status.BAD_REQUEST,
                 List.of(new ViolationReport.Violation(methodName, "Cannot invoke the field because the return value is null")));
     }
-
-
-}
\ No newline at end of file
+}
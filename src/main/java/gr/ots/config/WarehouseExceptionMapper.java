@@ -0,0 +1,50 @@
+package gr.ots.config;
+
+import gr.ots.pharmacy.warehouse.control.WarehouseError;
+import gr.ots.pharmacy.warehouse.control.WarehouseException;
+import io.quarkus.hibernate.validator.runtime.jaxrs.ViolationReport;
+import jakarta.inject.Inject;
+import jakarta.json.bind.Jsonb;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.ExceptionMapper;
+import jakarta.ws.rs.ext.Provider;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+// Business rejections never reach AllExceptionMapper: no cause chain to walk and the body of every error is
+// serialized once, the same JSON the other mappers produce
+@Provider
+public class WarehouseExceptionMapper implements ExceptionMapper<WarehouseException> {
+
+    private final ErrorMetrics errorMetrics;
+
+    private final Map<WarehouseError, byte[]> bodies = new EnumMap<>(WarehouseError.class);
+
+    @Inject
+    public WarehouseExceptionMapper(ErrorMetrics errorMetrics, Jsonb jsonb) {
+        this.errorMetrics = errorMetrics;
+        for (WarehouseError error : WarehouseError.values()) {
+            ViolationReport report = new ViolationReport("Constraint Violation",
+                    Response.Status.fromStatusCode(error.status()),
+                    List.of(new ViolationReport.Violation(null, error.message())));
+            bodies.put(error, jsonb.toJson(report).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public Response toResponse(WarehouseException exception) {
+        errorMetrics.handled(WarehouseExceptionMapper.class, exception);
+        WarehouseError error = exception.error();
+        Response.ResponseBuilder response = Response.status(error.status())
+                .type(MediaType.APPLICATION_JSON)
+                .entity(bodies.get(error));
+        if (error.status() == Response.Status.BAD_REQUEST.getStatusCode()) {
+            response.header("validation-exception", "true");
+        }
+        return response.build();
+    }
+}
@@ -2,5 +2,10 @@ package gr.ots.pharmacy.warehouse.boundary;
 
 import java.math.BigDecimal;
 
-public record DrugCreateDTO(String name, String code, BigDecimal price, int stock, int categoryId) {
+public record DrugCreateDTO(String name, String code, BigDecimal price, int stock, int categoryId, int reorderLevel) {
+
+    // without a reorder level the drug is never reported as low on stock
+    public DrugCreateDTO(String name, String code, BigDecimal price, int stock, int categoryId) {
+        this(name, code, price, stock, categoryId, 0);
+    }
 }
@@ -0,0 +1,59 @@
+package gr.ots.pharmacy.warehouse.boundary;
+
+import gr.ots.pharmacy.warehouse.control.WarehouseService;
+import jakarta.json.bind.Jsonb;
+import jakarta.ws.rs.core.StreamingOutput;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// Writes the catalogue as it is read from the database, either one JSON document per line or as a single JSON array
+class DrugExport implements StreamingOutput {
+
+    private static final int FLUSH_EVERY = 500;
+
+    private final WarehouseService warehouseService;
+    private final Jsonb jsonb;
+    private final boolean ndjson;
+
+    DrugExport(WarehouseService warehouseService, Jsonb jsonb, boolean ndjson) {
+        this.warehouseService = warehouseService;
+        this.jsonb = jsonb;
+        this.ndjson = ndjson;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        if (!ndjson) {
+            writer.write('[');
+        }
+
+        int[] written = {0};
+        try {
+            warehouseService.exportDrugs(drug -> {
+                try {
+                    if (!ndjson && written[0] > 0) {
+                        writer.write(',');
+                    }
+                    writer.write(jsonb.toJson(drug));
+                    if (ndjson) {
+                        writer.write('\n');
+                    }
+                    if (++written[0] % FLUSH_EVERY == 0) {
+                        writer.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        if (!ndjson) {
+            writer.write(']');
+        }
+        writer.flush();
+    }
+}
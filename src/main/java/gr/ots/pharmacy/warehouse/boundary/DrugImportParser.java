@@ -0,0 +1,110 @@
+package gr.ots.pharmacy.warehouse.boundary;
+
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+// Turns one line of an import body into a DrugCreateDTO. CSV needs a header row naming the columns, in any order,
+// reorderLevel may be left out. Fields may be double-quoted with "" as the escaped quote.
+abstract class DrugImportParser implements Function<String, DrugCreateDTO> {
+
+    private static final List<String> COLUMNS = List.of("name", "code", "price", "stock", "categoryid");
+
+    static DrugImportParser ndjson(Jsonb jsonb) {
+        return new DrugImportParser() {
+            @Override
+            public DrugCreateDTO apply(String line) {
+                DrugCreateDTO drug;
+                try {
+                    drug = jsonb.fromJson(line, DrugCreateDTO.class);
+                } catch (JsonbException e) {
+                    throw new IllegalArgumentException("Malformed JSON");
+                }
+                // a literal null is valid JSON, JSON-B returns it as is
+                if (drug == null) {
+                    throw new IllegalArgumentException("Expected a JSON object");
+                }
+                return drug;
+            }
+        };
+    }
+
+    static DrugImportParser csv(String header) {
+        if (header == null) {
+            throw new IllegalArgumentException("CSV header is missing");
+        }
+        List<String> names = split(header).stream().map(name -> name.trim().toLowerCase(Locale.ROOT)).toList();
+        int[] positions = COLUMNS.stream().mapToInt(names::indexOf).toArray();
+        int reorderLevel = names.indexOf("reorderlevel");
+        for (int position : positions) {
+            if (position < 0) {
+                throw new IllegalArgumentException("CSV header must name the columns name, code, price, stock and categoryId");
+            }
+        }
+
+        return new DrugImportParser() {
+            @Override
+            public DrugCreateDTO apply(String line) {
+                List<String> fields = split(line);
+                if (fields.size() != names.size()) {
+                    throw new IllegalArgumentException("Expected " + names.size() + " columns but found " + fields.size());
+                }
+                return new DrugCreateDTO(text(fields.get(positions[0])),
+                        text(fields.get(positions[1])),
+                        number(fields.get(positions[2]), "price", BigDecimal::new),
+                        number(fields.get(positions[3]), "stock", Integer::parseInt),
+                        number(fields.get(positions[4]), "categoryId", Integer::parseInt),
+                        reorderLevel < 0 ? 0 : number(fields.get(reorderLevel), "reorderLevel", Integer::parseInt));
+            }
+        };
+    }
+
+    // empty fields become null so that the bean validation messages match the JSON endpoints
+    private static String text(String field) {
+        return field.isEmpty() ? null : field;
+    }
+
+    private static <N> N number(String field, String column, Function<String, N> parse) {
+        try {
+            return parse.apply(field.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(column + " is not a number");
+        }
+    }
+
+    private static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
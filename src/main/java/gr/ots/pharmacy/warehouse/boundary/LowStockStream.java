@@ -0,0 +1,53 @@
+package gr.ots.pharmacy.warehouse.boundary;
+
+import gr.ots.pharmacy.warehouse.control.LowStockChanged;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseBroadcaster;
+import jakarta.ws.rs.sse.SseEventSink;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Pushes every committed LowStockChanged to the subscribed SSE clients, closed sinks are dropped by the broadcaster
+@ApplicationScoped
+public class LowStockStream {
+
+    static final String EVENT_NAME = "low-stock";
+
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    private volatile Sse sse;
+
+    private volatile SseBroadcaster broadcaster;
+
+    synchronized void subscribe(Sse sse, SseEventSink sink) {
+        if (broadcaster == null) {
+            this.sse = sse;
+            broadcaster = sse.newBroadcaster();
+            broadcaster.onClose(closed -> subscribers.decrementAndGet());
+            broadcaster.onError((failed, error) -> failed.close());
+        }
+        broadcaster.register(sink);
+        subscribers.incrementAndGet();
+    }
+
+    int subscribers() {
+        return subscribers.get();
+    }
+
+    void afterLowStockChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) LowStockChanged event) {
+        SseBroadcaster broadcaster = this.broadcaster;
+        if (broadcaster == null) {
+            return;
+        }
+        broadcaster.broadcast(sse.newEventBuilder()
+                .name(EVENT_NAME)
+                .id(String.valueOf(event.drugId()))
+                .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                .data(LowStockChanged.class, event)
+                .build());
+    }
+}
@@ -0,0 +1,4 @@
+package gr.ots.pharmacy.warehouse.boundary;
+
+public record ReorderLevelDTO(int reorderLevel) {
+}
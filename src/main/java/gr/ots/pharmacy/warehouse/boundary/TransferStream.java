@@ -0,0 +1,74 @@
+package gr.ots.pharmacy.warehouse.boundary;
+
+import gr.ots.pharmacy.warehouse.control.TransferFeed;
+import gr.ots.pharmacy.warehouse.control.TransferView;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import org.jboss.logging.Logger;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Writes one feed subscription to its SSE connection on a virtual thread of TransferStreams. Every send is awaited
+// before the next entry is taken, so a slow client backs up into its bounded subscription buffer and not into memory
+// here. An interrupt ends the stream and closes both.
+class TransferStream implements Runnable {
+
+    private static final Logger LOG = Logger.getLogger(TransferStream.class);
+
+    static final String TRANSFER = "transfer";
+    static final String RESET = "reset";
+    static final String OVERFLOW = "overflow";
+
+    private static final long HEARTBEAT_SECONDS = 15;
+    private static final long SEND_TIMEOUT_SECONDS = 30;
+
+    private final TransferFeed.Subscription subscription;
+    private final SseEventSink sink;
+    private final Sse sse;
+
+    TransferStream(TransferFeed.Subscription subscription, SseEventSink sink, Sse sse) {
+        this.subscription = subscription;
+        this.sink = sink;
+        this.sse = sse;
+    }
+
+    @Override
+    public void run() {
+        try (subscription; sink) {
+            if (subscription.isReset()) {
+                // the missed transfers are gone from the ring, GET warehouse/transfer has them
+                send(sse.newEventBuilder().name(RESET).data("").build());
+            }
+            while (!sink.isClosed()) {
+                TransferFeed.Entry entry = subscription.poll(HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+                if (entry == null) {
+                    // also notices clients that went away without anything to send
+                    send(sse.newEventBuilder().comment("heartbeat").build());
+                } else if (entry == TransferFeed.OVERFLOW) {
+                    // the client reconnects with its Last-Event-ID and resumes from the ring
+                    send(sse.newEventBuilder().name(OVERFLOW).data("").build());
+                    return;
+                } else {
+                    send(sse.newEventBuilder()
+                            .id(String.valueOf(entry.sequence()))
+                            .name(TRANSFER)
+                            .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                            .data(TransferView.class, entry.transfer())
+                            .build());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            LOG.debugf("Transfer stream closed: %s", e.getMessage());
+        }
+    }
+
+    private void send(OutboundSseEvent event) throws InterruptedException, ExecutionException, TimeoutException {
+        sink.send(event).toCompletableFuture().get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+}
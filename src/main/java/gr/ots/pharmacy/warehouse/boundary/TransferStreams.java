@@ -0,0 +1,43 @@
+package gr.ots.pharmacy.warehouse.boundary;
+
+import gr.ots.pharmacy.warehouse.control.TransferFeed;
+import io.quarkus.runtime.ShutdownEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import org.jboss.logging.Logger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Owns the virtual threads of the open transfer streams. On shutdown they are interrupted, every stream then closes
+// its subscription and its SSE connection instead of outliving the application.
+@ApplicationScoped
+public class TransferStreams {
+
+    private static final Logger LOG = Logger.getLogger(TransferStreams.class);
+
+    private static final long STOP_TIMEOUT_SECONDS = 5;
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("transfer-stream-", 0).factory());
+
+    void start(TransferFeed.Subscription subscription, SseEventSink sink, Sse sse) {
+        try {
+            executor.execute(new TransferStream(subscription, sink, sse));
+        } catch (RejectedExecutionException e) {
+            // the application is stopping, the client reconnects with its Last-Event-ID elsewhere or later
+            subscription.close();
+            sink.close();
+        }
+    }
+
+    void stop(@Observes ShutdownEvent event) throws InterruptedException {
+        executor.shutdownNow();
+        if (!executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            LOG.warnf("Transfer streams still open %d seconds after shutdown", STOP_TIMEOUT_SECONDS);
+        }
+    }
+}
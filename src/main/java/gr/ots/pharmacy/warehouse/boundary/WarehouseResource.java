@@ -1,27 +1,91 @@
 package gr.ots.pharmacy.warehouse.boundary;
 
+import gr.ots.pharmacy.warehouse.control.CacheStatistics;
+import gr.ots.pharmacy.warehouse.control.CatalogueCache;
+import gr.ots.pharmacy.warehouse.control.DrugImport;
+import gr.ots.pharmacy.warehouse.control.DrugImportResult;
+import gr.ots.pharmacy.warehouse.control.IngestionStatus;
+import gr.ots.pharmacy.warehouse.control.PageRequest;
 import gr.ots.pharmacy.warehouse.control.PagedResult;
+import gr.ots.pharmacy.warehouse.control.StockLevel;
+import gr.ots.pharmacy.warehouse.control.SummaryGranularity;
+import gr.ots.pharmacy.warehouse.control.TransferBatchResult;
+import gr.ots.pharmacy.warehouse.control.TransferFeed;
+import gr.ots.pharmacy.warehouse.control.TransferIngestion;
+import gr.ots.pharmacy.warehouse.control.TransferSummary;
+import gr.ots.pharmacy.warehouse.control.TransferView;
+import gr.ots.pharmacy.warehouse.control.WarehouseError;
 import gr.ots.pharmacy.warehouse.control.WarehouseService;
 import gr.ots.pharmacy.warehouse.entity.Drug;
 import gr.ots.pharmacy.warehouse.entity.Transfer;
+import io.smallrye.common.annotation.RunOnVirtualThread;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import jakarta.json.bind.Jsonb;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.GenericEntity;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.time.LocalDate;
 import java.util.List;
 
+// every endpoint blocks on JDBC, on virtual threads the number of requests in flight is no longer capped by the worker
+// pool but by the connection pool (quarkus.virtual-threads.enabled=false falls back to the worker pool)
 @Path("warehouse")
 @ApplicationScoped
+@RunOnVirtualThread
 public class WarehouseResource {
 
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    public static final String TEXT_CSV = "text/csv";
+
+    // pages with one array per attribute and the referenced drugs once, see ColumnarJsonWriter
+    public static final String APPLICATION_COLUMNAR_JSON = "application/vnd.ots.columnar+json";
+
     @Inject
     private WarehouseService warehouseService;
 
+    @Inject
+    private CatalogueCache catalogueCache;
+
+    @Inject
+    private TransferIngestion transferIngestion;
+
+    @Inject
+    private DrugImport drugImport;
+
+    @Inject
+    private LowStockStream lowStockStream;
+
+    @Inject
+    private TransferFeed transferFeed;
+
+    @Inject
+    private TransferStreams transferStreams;
+
+    @Inject
+    private Jsonb jsonb;
+
     @GET
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_COLUMNAR_JSON})
     public PagedResult<Drug> getAllDrugs(@QueryParam("page") @DefaultValue("1") int page,
-                                         @QueryParam("limit") @DefaultValue("10") int limit) {
-        return warehouseService.getAllDrugs(page, limit);
+                                         @QueryParam("limit") @DefaultValue("10") int limit,
+                                         @QueryParam("cursor") String cursor,
+                                         @QueryParam("withTotals") @DefaultValue("true") boolean withTotals) {
+        return warehouseService.getAllDrugs(new PageRequest(page, limit, cursor, withTotals));
     }
 
     @GET
@@ -30,25 +94,186 @@ public class WarehouseResource {
         return warehouseService.getAllDrugs();
     }
 
+    @GET
+    @Path("search")
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_COLUMNAR_JSON})
+    public PagedResult<Drug> searchDrugs(@QueryParam("q") String query,
+                                         @QueryParam("page") @DefaultValue("1") int page,
+                                         @QueryParam("limit") @DefaultValue("10") int limit) {
+        return warehouseService.searchDrugs(query, PageRequest.of(page, limit));
+    }
+
+    @GET
+    @Path("export")
+    public Response exportDrugs(@QueryParam("format") @DefaultValue("ndjson") String format) {
+        boolean ndjson = switch (format) {
+            case "ndjson" -> true;
+            case "json" -> false;
+            default -> throw WarehouseError.UNSUPPORTED_EXPORT_FORMAT.exception();
+        };
+        return Response.ok(new DrugExport(warehouseService, jsonb, ndjson))
+                .type(ndjson ? APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                .build();
+    }
+
     @POST
     public Drug createNewDrug(DrugCreateDTO drugCreateDTO) {
-        return warehouseService.createDrug(drugCreateDTO);
+        return warehouseService.createDrug(requireBody(drugCreateDTO));
+    }
+
+    // the body is read line by line while it is imported, CSV rejections count lines after the header
+    @POST
+    @Path("import")
+    @Consumes({TEXT_CSV, APPLICATION_NDJSON})
+    public DrugImportResult importDrugs(InputStream body, @HeaderParam(HttpHeaders.CONTENT_TYPE) MediaType contentType) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        DrugImportParser parser = contentType.isCompatible(MediaType.valueOf(TEXT_CSV))
+                ? DrugImportParser.csv(reader.readLine())
+                : DrugImportParser.ndjson(jsonb);
+        return drugImport.importDrugs(reader.lines().iterator(), parser);
+    }
+
+    @PUT
+    @Path("{drugId}/reorder-level")
+    public Drug setReorderLevel(@PathParam("drugId") long drugId, ReorderLevelDTO reorderLevelDTO) {
+        return warehouseService.setReorderLevel(drugId, requireBody(reorderLevelDTO).reorderLevel());
     }
 
     @GET
-    @Path("transfer")
-    public PagedResult<Transfer> getTransfers(@QueryParam("page") @DefaultValue("1") int page,
+    @Path("low-stock")
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_COLUMNAR_JSON})
+    public PagedResult<Drug> getLowStockDrugs(@QueryParam("page") @DefaultValue("1") int page,
                                               @QueryParam("limit") @DefaultValue("10") int limit,
-                                              @QueryParam("drugIds") List<Long> drugIds,
-                                              @QueryParam("from") Instant from,
-                                              @QueryParam("to") Instant to) {
-        return warehouseService.getTransfers(page, limit, drugIds, from, to);
+                                              @QueryParam("cursor") String cursor,
+                                              @QueryParam("withTotals") @DefaultValue("true") boolean withTotals) {
+        return warehouseService.getLowStockDrugs(new PageRequest(page, limit, cursor, withTotals));
+    }
+
+    // only the crossings from now on, the paged listing above is the current state
+    @GET
+    @Path("low-stock/stream")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void streamLowStock(@Context SseEventSink sink, @Context Sse sse) {
+        lowStockStream.subscribe(sse, sink);
+    }
+
+    @GET
+    @Path("{drugId}/stock")
+    public StockLevel getStockAt(@PathParam("drugId") long drugId, @QueryParam("at") Instant at) {
+        return warehouseService.getStockAt(drugId, at != null ? at : Instant.now());
+    }
+
+    @GET
+    @Path("transfer")
+    @Produces({MediaType.APPLICATION_JSON, APPLICATION_COLUMNAR_JSON})
+    public Response getTransfers(@QueryParam("page") @DefaultValue("1") int page,
+                                 @QueryParam("limit") @DefaultValue("10") int limit,
+                                 @QueryParam("cursor") String cursor,
+                                 @QueryParam("withTotals") @DefaultValue("true") boolean withTotals,
+                                 @QueryParam("view") @DefaultValue("summary") String view,
+                                 @QueryParam("drugIds") List<Long> drugIds,
+                                 @QueryParam("from") Instant from,
+                                 @QueryParam("to") Instant to) {
+        PageRequest pageRequest = new PageRequest(page, limit, cursor, withTotals);
+        // the item type travels with the entity, the columnar layout of an empty page depends on it
+        GenericEntity<?> entity = switch (view) {
+            case "summary" -> new GenericEntity<PagedResult<TransferView>>(warehouseService.getTransferViews(pageRequest, drugIds, from, to)) {
+            };
+            case "full" -> new GenericEntity<PagedResult<Transfer>>(warehouseService.getTransfers(pageRequest, drugIds, from, to)) {
+            };
+            default -> throw WarehouseError.UNSUPPORTED_TRANSFER_VIEW.exception();
+        };
+        return Response.ok(entity).build();
+    }
+
+    @GET
+    @Path("transfer/summary")
+    public List<TransferSummary> getTransferSummary(@QueryParam("drugIds") List<Long> drugIds,
+                                                    @QueryParam("from") LocalDate from,
+                                                    @QueryParam("to") LocalDate to,
+                                                    @QueryParam("granularity") @DefaultValue("day") String granularity) {
+        SummaryGranularity summaryGranularity = switch (granularity) {
+            case "day" -> SummaryGranularity.DAY;
+            case "week" -> SummaryGranularity.WEEK;
+            case "month" -> SummaryGranularity.MONTH;
+            default -> throw WarehouseError.UNSUPPORTED_SUMMARY_GRANULARITY.exception();
+        };
+        // without an explicit range the last year is summarized
+        LocalDate toDay = to != null ? to : LocalDate.now();
+        LocalDate fromDay = from != null ? from : toDay.minusYears(1);
+        return warehouseService.getTransferSummary(drugIds, fromDay, toDay, summaryGranularity);
+    }
+
+    // committed transfers as they happen, a reconnecting client resumes after its Last-Event-ID
+    @GET
+    @Path("transfer/stream")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void streamTransfers(@Context SseEventSink sink, @Context Sse sse,
+                                @HeaderParam(HttpHeaders.LAST_EVENT_ID_HEADER) String lastEventId,
+                                @QueryParam("drugIds") List<Long> drugIds) {
+        TransferFeed.Subscription subscription = transferFeed.subscribe(lastSequence(lastEventId), drugIds);
+        transferStreams.start(subscription, sink, sse);
     }
 
     @POST
     @Path("transfer")
-    public Transfer createTransfer(TransferCreateDTO transferCreateDTO) {
-        return warehouseService.createTransfer(transferCreateDTO.type(), transferCreateDTO.drugId(), transferCreateDTO.quantity());
+    public Transfer createTransfer(TransferCreateDTO transferCreateDTO, @HeaderParam("Idempotency-Key") String idempotencyKey) {
+        requireBody(transferCreateDTO);
+        return warehouseService.createTransfer(transferCreateDTO.type(), transferCreateDTO.drugId(), transferCreateDTO.quantity(), idempotencyKey);
     }
 
+    @POST
+    @Path("transfer/batch")
+    public List<TransferBatchResult> createTransfers(List<TransferCreateDTO> transfers) {
+        return warehouseService.createTransfers(transfers);
+    }
+
+    @POST
+    @Path("transfer/async")
+    public Response submitTransfer(TransferCreateDTO transferCreateDTO) {
+        IngestionStatus status = transferIngestion.submit(transferCreateDTO);
+        if (status == null) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", 1)
+                    .build();
+        }
+        return Response.accepted(status)
+                .location(URI.create("warehouse/transfer/async/" + status.trackingId()))
+                .build();
+    }
+
+    @GET
+    @Path("transfer/async/{trackingId}")
+    public IngestionStatus getTransferStatus(@PathParam("trackingId") String trackingId) {
+        IngestionStatus status = transferIngestion.status(trackingId);
+        if (status == null) {
+            throw new NotFoundException("Unknown tracking id");
+        }
+        return status;
+    }
+
+    @GET
+    @Path("cache")
+    public List<CacheStatistics> getCacheStatistics() {
+        return catalogueCache.statistics();
+    }
+
+    private static Long lastSequence(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(lastEventId.strip());
+        } catch (NumberFormatException e) {
+            throw WarehouseError.INVALID_LAST_EVENT_ID.exception();
+        }
+    }
+
+    // an empty body would otherwise end up as a NullPointerException
+    private static <T> T requireBody(T body) {
+        if (body == null) {
+            throw WarehouseError.BODY_REQUIRED.exception();
+        }
+        return body;
+    }
 }
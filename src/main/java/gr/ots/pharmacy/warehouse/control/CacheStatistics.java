@@ -0,0 +1,4 @@
+package gr.ots.pharmacy.warehouse.control;
+
+public record CacheStatistics(String region, long hits, long misses, long puts, long size) {
+}
@@ -0,0 +1,36 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.entity.Category;
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+
+import java.util.List;
+
+// Drug and Category are kept in the second-level cache (bounded by size and idle time, see application.properties).
+// Read-write caching updates an entry when its entity is updated, bulk updates evict the whole region.
+@ApplicationScoped
+public class CatalogueCache {
+
+    private static final List<String> REGIONS = List.of(Category.class.getName(), Drug.class.getName());
+
+    @Inject
+    private SessionFactory sessionFactory;
+
+    public List<CacheStatistics> statistics() {
+        return REGIONS.stream().map(region -> {
+            CacheRegionStatistics statistics = sessionFactory.getStatistics().getDomainDataRegionStatistics(region);
+            if (statistics == null) {
+                return new CacheStatistics(region, 0, 0, 0, 0);
+            }
+            return new CacheStatistics(region, statistics.getHitCount(), statistics.getMissCount(), statistics.getPutCount(),
+                    statistics.getElementCountInMemory());
+        }).toList();
+    }
+
+    public void evictAll() {
+        sessionFactory.getCache().evictAllRegions();
+    }
+}
@@ -0,0 +1,65 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Caches the COUNT of each listing filter until the next drug or transfer is created
+@ApplicationScoped
+public class CountCache {
+
+    private static final int MAX_ENTRIES = 1024;
+
+    private final Map<String, Long> counts = new ConcurrentHashMap<>();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    public long count(String key, LongSupplier counter) {
+        Long cached = counts.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long observedGeneration = generation.get();
+        long count = counter.getAsLong();
+
+        if (counts.size() >= MAX_ENTRIES) {
+            counts.clear();
+        }
+        counts.put(key, count);
+
+        // a write invalidated while we were counting, the value may already be stale
+        if (generation.get() != observedGeneration) {
+            counts.remove(key, count);
+        }
+        return count;
+    }
+
+    // Invalidation happens both inside the writing transaction and after it completes, so a count read
+    // by a concurrent transaction before the commit never survives it
+    public void invalidate() {
+        generation.incrementAndGet();
+        counts.clear();
+    }
+
+    void onDrugCreated(@Observes DrugCreated event) {
+        invalidate();
+    }
+
+    void afterDrugCreated(@Observes(during = TransactionPhase.AFTER_COMPLETION) DrugCreated event) {
+        invalidate();
+    }
+
+    void onTransferCreated(@Observes TransferCreated event) {
+        invalidate();
+    }
+
+    void afterTransferCreated(@Observes(during = TransactionPhase.AFTER_COMPLETION) TransferCreated event) {
+        invalidate();
+    }
+}
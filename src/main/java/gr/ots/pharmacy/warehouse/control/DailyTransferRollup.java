@@ -0,0 +1,141 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.entity.Transfer;
+import gr.ots.pharmacy.warehouse.entity.TransferType;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.Session;
+import org.hibernate.query.NativeQuery;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+// Keeps TRANSFER_DAILY_SUMMARY, (drug, day, type) -> sum(quantity) and count, up to date in the transaction that
+// creates the transfers. Days are calendar days in warehouse.rollup.zone, the V1.3 backfill used the database session
+// zone, so the two must agree on an existing database.
+@ApplicationScoped
+public class DailyTransferRollup {
+
+    private static final String SUMMARY_TABLE = "TRANSFER_DAILY_SUMMARY";
+
+    // the first transfer of a bucket inserts it, PostgreSQL resolves two concurrent first inserts itself
+    private static final String UPSERT = """
+            INSERT INTO TRANSFER_DAILY_SUMMARY (DRUG_ID, SUMMARY_DAY, TYPE, QUANTITY, TRANSFER_COUNT)
+            VALUES (?, ?, ?, ?, ?)
+            ON CONFLICT (DRUG_ID, SUMMARY_DAY, TYPE) DO UPDATE
+                SET QUANTITY = TRANSFER_DAILY_SUMMARY.QUANTITY + EXCLUDED.QUANTITY,
+                    TRANSFER_COUNT = TRANSFER_DAILY_SUMMARY.TRANSFER_COUNT + EXCLUDED.TRANSFER_COUNT
+            """;
+
+    // H2 has no ON CONFLICT, its MERGE inserts when the row is not visible yet and loses to a concurrent first insert
+    private static final String MERGE = """
+            MERGE INTO TRANSFER_DAILY_SUMMARY s
+            USING (SELECT CAST(? AS BIGINT) AS DRUG_ID, CAST(? AS DATE) AS SUMMARY_DAY, CAST(? AS VARCHAR(3)) AS TYPE,
+                          CAST(? AS BIGINT) AS QUANTITY, CAST(? AS BIGINT) AS TRANSFER_COUNT) t
+            ON s.DRUG_ID = t.DRUG_ID AND s.SUMMARY_DAY = t.SUMMARY_DAY AND s.TYPE = t.TYPE
+            WHEN MATCHED THEN UPDATE SET QUANTITY = s.QUANTITY + t.QUANTITY, TRANSFER_COUNT = s.TRANSFER_COUNT + t.TRANSFER_COUNT
+            WHEN NOT MATCHED THEN INSERT (DRUG_ID, SUMMARY_DAY, TYPE, QUANTITY, TRANSFER_COUNT)
+                VALUES (t.DRUG_ID, t.SUMMARY_DAY, t.TYPE, t.QUANTITY, t.TRANSFER_COUNT)
+            """;
+
+    // the retried MERGE sees the committed row of the winner and takes the update branch
+    private static final int MERGE_ATTEMPTS = 3;
+
+    @ConfigProperty(name = "quarkus.datasource.db-kind")
+    private String dbKind;
+
+    @ConfigProperty(name = "warehouse.rollup.zone", defaultValue = "UTC")
+    private String zone;
+
+    private record Bucket(long drugId, LocalDate day, TransferType type) {
+    }
+
+    public void add(List<Transfer> transfers) {
+        // transfers of the same drug, day and type collapse into a single statement
+        ZoneId zoneId = ZoneId.of(zone);
+        Map<Bucket, long[]> buckets = new LinkedHashMap<>();
+        for (Transfer transfer : transfers) {
+            LocalDate day = LocalDate.ofInstant(transfer.getTransferDate(), zoneId);
+            long[] totals = buckets.computeIfAbsent(new Bucket(transfer.getDrug().id, day, transfer.getType()), bucket -> new long[2]);
+            totals[0] += transfer.getQuantity();
+            totals[1]++;
+        }
+
+        // plain JDBC: a failed statement through Hibernate would mark the whole transaction for rollback, and the
+        // summary table is not cached, so there is no query space to synchronize either
+        boolean postgres = "postgresql".equals(dbKind);
+        Transfer.getEntityManager().unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(postgres ? UPSERT : MERGE)) {
+                for (Map.Entry<Bucket, long[]> entry : buckets.entrySet()) {
+                    Bucket bucket = entry.getKey();
+                    statement.setLong(1, bucket.drugId());
+                    statement.setObject(2, bucket.day());
+                    statement.setString(3, bucket.type().name());
+                    statement.setLong(4, entry.getValue()[0]);
+                    statement.setLong(5, entry.getValue()[1]);
+                    if (postgres) {
+                        statement.addBatch();
+                    } else {
+                        merge(statement);
+                    }
+                }
+                if (postgres) {
+                    statement.executeBatch();
+                }
+            }
+        });
+    }
+
+    private static void merge(PreparedStatement statement) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                statement.executeUpdate();
+                return;
+            } catch (SQLIntegrityConstraintViolationException exception) {
+                // H2 rolls back only the failed statement, the transaction goes on
+                if (attempt == MERGE_ATTEMPTS) {
+                    throw exception;
+                }
+            }
+        }
+    }
+
+    public List<TransferSummary> summarize(List<Long> drugIds, LocalDate from, LocalDate to, SummaryGranularity granularity) {
+        boolean filterDrugs = drugIds != null && !drugIds.isEmpty();
+
+        NativeQuery<Object[]> query = Transfer.getEntityManager()
+                .createNativeQuery("SELECT DRUG_ID, SUMMARY_DAY, TYPE, QUANTITY, TRANSFER_COUNT FROM " + SUMMARY_TABLE
+                        + " WHERE SUMMARY_DAY >= :from AND SUMMARY_DAY <= :to"
+                        + (filterDrugs ? " AND DRUG_ID IN (:drugIds)" : ""))
+                .unwrap(NativeQuery.class);
+        query.addScalar("DRUG_ID", Long.class)
+                .addScalar("SUMMARY_DAY", LocalDate.class)
+                .addScalar("TYPE", String.class)
+                .addScalar("QUANTITY", Long.class)
+                .addScalar("TRANSFER_COUNT", Long.class);
+        query.setParameter("from", from);
+        query.setParameter("to", to);
+        if (filterDrugs) {
+            query.setParameterList("drugIds", drugIds);
+        }
+
+        // rows are daily buckets, rolling them up to weeks or months only depends on the number of buckets
+        Map<Bucket, long[]> periods = new TreeMap<>(Comparator.comparingLong(Bucket::drugId)
+                .thenComparing(Bucket::day)
+                .thenComparing(Bucket::type));
+        for (Object[] row : query.getResultList()) {
+            LocalDate period = granularity.periodOf((LocalDate) row[1]);
+            long[] totals = periods.computeIfAbsent(new Bucket((Long) row[0], period, TransferType.valueOf((String) row[2])), bucket -> new long[2]);
+            totals[0] += (Long) row[3];
+            totals[1] += (Long) row[4];
+        }
+
+        List<TransferSummary> summaries = new ArrayList<>(periods.size());
+        periods.forEach((bucket, totals) -> summaries.add(new TransferSummary(bucket.drugId(), bucket.day(), bucket.type(), totals[0], totals[1])));
+        return summaries;
+    }
+}
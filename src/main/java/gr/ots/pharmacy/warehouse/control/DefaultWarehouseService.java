@@ -1,31 +1,97 @@
 package gr.ots.pharmacy.warehouse.control;
 
 import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import gr.ots.pharmacy.warehouse.boundary.TransferCreateDTO;
 import gr.ots.pharmacy.warehouse.entity.*;
-import io.quarkus.hibernate.orm.panache.PanacheQuery;
+import io.micrometer.core.annotation.Timed;
+import io.quarkus.narayana.jta.QuarkusTransaction;
 import io.quarkus.panache.common.Sort;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
+import jakarta.persistence.LockModeType;
 import jakarta.persistence.TypedQuery;
-import jakarta.persistence.criteria.CriteriaBuilder;
-import jakarta.persistence.criteria.CriteriaQuery;
-import jakarta.persistence.criteria.Predicate;
-import jakarta.persistence.criteria.Root;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 import jakarta.transaction.Transactional;
+import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import jakarta.validation.constraints.Size;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.CacheMode;
+import org.hibernate.SessionFactory;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.query.NativeQuery;
 
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.List;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+@Timed(value = "warehouse.service", description = "WarehouseService calls by method and exception", histogram = true)
 @Transactional
 @ApplicationScoped
 public class DefaultWarehouseService implements WarehouseService {
 
+    private static final int EXPORT_PAGE_SIZE = 500;
+
+    private static final String ATOMIC_STOCK_UPDATE = "UPDATE DRUG SET STOCK = STOCK + :delta,"
+            + " LOW_STOCK = CASE WHEN STOCK + :delta < REORDER_LEVEL THEN TRUE ELSE FALSE END,"
+            + " VERSION = VERSION + 1, UPDATED_AT = :updatedAt"
+            + " WHERE ID = :id AND STOCK + :delta >= 0";
+
+    @ConfigProperty(name = "warehouse.stock-update-mode", defaultValue = "OPTIMISTIC")
+    private StockUpdateMode stockUpdateMode;
+
+    @ConfigProperty(name = "quarkus.datasource.db-kind")
+    private String dbKind;
+
+    @Inject
+    private SessionFactory sessionFactory;
+
+    @Inject
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    @Inject
+    private CountCache countCache;
+
+    @Inject
+    private DailyTransferRollup dailyTransferRollup;
+
+    @Inject
+    private TransferMetrics transferMetrics;
+
+    @Inject
+    private IdempotencyIndex idempotencyIndex;
+
+    @Inject
+    private StockSnapshots stockSnapshots;
+
+    @Inject
+    private TransferArchive transferArchive;
+
+    @Inject
+    private DrugSearchIndex drugSearchIndex;
+
+    @Inject
+    private Event<DrugCreated> drugCreated;
+
+    @Inject
+    private Event<TransferCreated> transferCreated;
+
+    @Inject
+    private Event<LowStockChanged> lowStockChanged;
+
     @Override
     public Drug createDrug(DrugCreateDTO drugCreateDTO) {
         Drug drug = new Drug(drugCreateDTO);
         drug.persist();
+        drugCreated.fire(new DrugCreated(drug));
         return drug;
     }
 
@@ -34,92 +100,569 @@ public class DefaultWarehouseService implements WarehouseService {
         return Drug.listAll();
     }
 
+    @Override
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public void exportDrugs(Consumer<Drug> consumer) {
+        // keyset pages of drugs, each read in a short transaction of its own: a slow client holds neither a transaction
+        // nor a connection while it consumes a page, and every drug is exported once even if the catalogue changes
+        long lastId = 0;
+        List<Drug> page;
+        do {
+            long after = lastId;
+            page = QuarkusTransaction.requiringNew().call(() -> Drug.getEntityManager()
+                    .createQuery("from Drug d join fetch d.category where d.id > ?1 order by d.id", Drug.class)
+                    .setParameter(1, after)
+                    .setMaxResults(EXPORT_PAGE_SIZE)
+                    .setHint(HibernateHints.HINT_READ_ONLY, true)
+                    .getResultList());
+            for (Drug drug : page) {
+                consumer.accept(drug);
+                lastId = drug.id;
+            }
+        } while (page.size() == EXPORT_PAGE_SIZE);
+    }
+
     @Override
     public PagedResult<Drug> getAllDrugs(int page, int limit) {
+        return getAllDrugs(PageRequest.of(page, limit));
+    }
+
+    @Override
+    public PagedResult<Drug> getAllDrugs(PageRequest pageRequest) {
+        Sort sort = Sort.descending(Drug_.CREATED_AT, "id");
+
+        // one row more than requested tells whether there is a next page without counting
+        List<Drug> drugs;
+        if (pageRequest.isKeyset()) {
+            PageCursor cursor = PageCursor.decode(pageRequest.cursor());
+            drugs = Drug.<Drug>find("createdAt <= ?1 and (createdAt < ?1 or id < ?2)", sort, cursor.createdAt(), cursor.id())
+                    .range(0, pageRequest.limit())
+                    .list();
+        } else {
+            drugs = Drug.<Drug>findAll(sort)
+                    .range(pageRequest.offset(), pageRequest.offset() + pageRequest.limit())
+                    .list();
+        }
+
+        if (!pageRequest.withTotals()) {
+            return pagedResult(pageRequest, null, null, drugs, PageCursor::of);
+        }
+
+        long totalDrugs = countCache.count("drugs", () -> Drug.count());
+        int totalPages = totalDrugs == 0 ? 1 : (int) Math.ceil((double) totalDrugs / pageRequest.limit());
+
+        return pagedResult(pageRequest, totalDrugs, totalPages, drugs, PageCursor::of);
+    }
+
+    @Override
+    public Drug setReorderLevel(@Positive long drugId, @PositiveOrZero int reorderLevel) {
+        Drug drug = Drug.findById(drugId);
+
+        if (drug == null) {
+            throw WarehouseError.DRUG_NOT_FOUND.exception();
+        }
+
+        boolean wasLow = drug.isLowStock();
+        drug.setReorderLevel(reorderLevel);
+        fireIfCrossed(drug, wasLow);
+        return drug;
+    }
+
+    @Override
+    public PagedResult<Drug> getLowStockDrugs(PageRequest pageRequest) {
+        Sort sort = Sort.descending(Drug_.CREATED_AT, "id");
+
+        // the same keyset walk as getAllDrugs, restricted to the flagged rows of DRUG_LOW_STOCK_IDX
+        List<Drug> drugs;
+        if (pageRequest.isKeyset()) {
+            PageCursor cursor = PageCursor.decode(pageRequest.cursor());
+            drugs = Drug.<Drug>find("lowStock = true and createdAt <= ?1 and (createdAt < ?1 or id < ?2)", sort, cursor.createdAt(), cursor.id())
+                    .range(0, pageRequest.limit())
+                    .list();
+        } else {
+            drugs = Drug.<Drug>find("lowStock = true", sort)
+                    .range(pageRequest.offset(), pageRequest.offset() + pageRequest.limit())
+                    .list();
+        }
+
+        if (!pageRequest.withTotals()) {
+            return pagedResult(pageRequest, null, null, drugs, PageCursor::of);
+        }
 
-        page = Math.max(1, page);
-        limit = Math.max(1, Math.min(limit, 50));
+        long totalDrugs = Drug.count("lowStock = true");
+        int totalPages = totalDrugs == 0 ? 1 : (int) Math.ceil((double) totalDrugs / pageRequest.limit());
 
-        PanacheQuery<Drug> queryDrugs = Drug.findAll(Sort.by(Drug_.CREATED_AT).descending());
-        PanacheQuery<Drug> paginatedQuery = queryDrugs.page(page - 1, limit);
+        return pagedResult(pageRequest, totalDrugs, totalPages, drugs, PageCursor::of);
+    }
+
+    @Override
+    public PagedResult<Drug> searchDrugs(@NotBlank String query, PageRequest pageRequest) {
+        DrugSearchIndex.Matches matches = drugSearchIndex.search(query, pageRequest.offset() + pageRequest.limit());
+        List<Long> ids = matches.ids();
 
-        int totalPages = queryDrugs.pageCount();
-        long totalDrugs = queryDrugs.count();
+        // the page is read by id, which the second-level cache answers without a query
+        List<Drug> drugs = ids.subList(Math.min(pageRequest.offset(), ids.size()), ids.size())
+                .stream()
+                .map(id -> Drug.<Drug>findById(id))
+                .filter(Objects::nonNull)
+                .toList();
 
-        return new PagedResult<>(page, limit, totalDrugs, totalPages, paginatedQuery.list());
+        int totalPages = matches.total() == 0 ? 1 : (int) Math.ceil((double) matches.total() / pageRequest.limit());
+        boolean hasNext = pageRequest.offset() + pageRequest.limit() < matches.total();
+        return new PagedResult<>(pageRequest.page(), pageRequest.limit(), (long) matches.total(), totalPages, hasNext, null, drugs);
     }
 
     @Override
     public Transfer createTransfer(@NotNull TransferType type, @Positive int drugId, @Positive int quantity) {
+        return insertTransfer(type, drugId, quantity, null);
+    }
+
+    @Override
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public Transfer createTransfer(@NotNull TransferType type, @Positive int drugId, @Positive int quantity, @Size(max = 64) String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return QuarkusTransaction.requiringNew().call(() -> insertTransfer(type, drugId, quantity, null));
+        }
+
+        // the lookup, the insert and the read of a concurrent winner are short transactions one after the other, a
+        // request never holds one pooled connection while it waits for a second
+        Transfer original = QuarkusTransaction.requiringNew().call(() -> findByIdempotencyKey(idempotencyKey));
+        if (original != null) {
+            return replay(original, type, drugId, quantity);
+        }
+
+        // two requests with the same key can both miss above, the unique index decides
+        try {
+            return QuarkusTransaction.requiringNew().call(() -> {
+                Transfer transfer = insertTransfer(type, drugId, quantity, idempotencyKey);
+                Transfer.flush();
+                return transfer;
+            });
+        } catch (RuntimeException exception) {
+            Transfer winner = isIntegrityViolation(exception)
+                    ? QuarkusTransaction.requiringNew().call(() -> findByIdempotencyKey(idempotencyKey))
+                    : null;
+            if (winner == null) {
+                throw exception;
+            }
+            return replay(winner, type, drugId, quantity);
+        }
+    }
+
+    private static Transfer replay(Transfer original, TransferType type, int drugId, int quantity) {
+        if (original.getType() != type || original.getDrug().id != drugId || original.getQuantity() != quantity) {
+            throw WarehouseError.IDEMPOTENCY_KEY_REUSED.exception();
+        }
+        return original;
+    }
+
+    // Hibernate translates the SQLState of every dialect, the JDBC subclass covers drivers that report it directly (H2)
+    static boolean isIntegrityViolation(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof org.hibernate.exception.ConstraintViolationException
+                    || cause instanceof SQLIntegrityConstraintViolationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Transfer insertTransfer(TransferType type, int drugId, int quantity, String idempotencyKey) {
+        if (stockUpdateMode == StockUpdateMode.ATOMIC) {
+            return createTransferAtomically(type, drugId, quantity, idempotencyKey);
+        }
+
         Drug drug = Drug.findById(drugId);
 
         if (drug == null) {
-            throw new IllegalArgumentException("Drug not found");
+            transferMetrics.drugNotFound();
+            throw WarehouseError.DRUG_NOT_FOUND.exception();
         }
 
         if (type == TransferType.OUT && drug.getStock() < quantity) {
-            throw new IllegalArgumentException("Insufficient stock");
+            transferMetrics.insufficientStock();
+            throw WarehouseError.INSUFFICIENT_STOCK.exception();
         }
 
-        Transfer transfer = new Transfer();
-        transfer.setType(type);
-        transfer.setDrug(drug);
-        transfer.setQuantity(quantity);
-        transfer.setTransferDate(Instant.now());
+        Transfer transfer = newTransfer(type, drug, quantity, Instant.now());
+        transfer.setIdempotencyKey(idempotencyKey);
 
+        boolean wasLow = drug.isLowStock();
         drug.setStock(drug.getStock() + (type == TransferType.IN ? quantity : -quantity));
+        fireIfCrossed(drug, wasLow);
 
         drug.persist();
         transfer.persist();
+        dailyTransferRollup.add(List.of(transfer));
+        transferCreated.fire(new TransferCreated(transfer));
+
+        return transfer;
+    }
+
+    private Transfer createTransferAtomically(TransferType type, int drugId, int quantity, String idempotencyKey) {
+        // the stock check and the decrement happen in the same statement, concurrent OUT transfers of the same drug
+        // wait on the row lock instead of failing on the version check. The statement returns the updated row, so the
+        // drug is read in the same round trip
+        int delta = type == TransferType.IN ? quantity : -quantity;
+        NativeQuery<Object[]> update = Drug.getEntityManager().createNativeQuery("postgresql".equals(dbKind)
+                        ? ATOMIC_STOCK_UPDATE + " RETURNING *, VERSION AS UPDATED_VERSION"
+                        : "SELECT d.*, d.VERSION AS UPDATED_VERSION FROM FINAL TABLE (" + ATOMIC_STOCK_UPDATE + ") d")
+                .unwrap(NativeQuery.class);
+        update.addEntity(Drug.class)
+                .addScalar("UPDATED_VERSION", Long.class)
+                .addSynchronizedEntityClass(Drug.class)
+                .setCacheMode(CacheMode.IGNORE);
+        update.setParameter("delta", delta);
+        update.setParameter("updatedAt", TruncateUtil.truncate(Instant.now()));
+        update.setParameter("id", (long) drugId);
+        Object[] row = update.getResultStream().findFirst().orElse(null);
+
+        if (row == null) {
+            // no row updated, only now is it worth telling a missing drug from a short stock
+            if (Drug.findById(drugId) == null) {
+                transferMetrics.drugNotFound();
+                throw WarehouseError.DRUG_NOT_FOUND.exception();
+            }
+            transferMetrics.insufficientStock();
+            throw WarehouseError.INSUFFICIENT_STOCK.exception();
+        }
+
+        // a drug this session already holds keeps its loaded state, it is refreshed instead
+        Drug drug = (Drug) row[0];
+        if (drug.getVersion() != (Long) row[1]) {
+            Drug.getEntityManager().refresh(drug);
+        }
+        evictOnCompletion(drug.id);
+
+        // the row is locked by the update, so the stock before it is exactly the updated one minus the delta
+        fireIfCrossed(drug, drug.getStock() - delta < drug.getReorderLevel());
+
+        Transfer transfer = newTransfer(type, drug, quantity, Instant.now());
+        transfer.setIdempotencyKey(idempotencyKey);
+        transfer.persist();
+        dailyTransferRollup.add(List.of(transfer));
+        transferCreated.fire(new TransferCreated(transfer));
 
         return transfer;
     }
 
+    // the statement is read as a query, it neither evicts the Drug region like a bulk update nor puts its uncommitted
+    // row into the cache. Only the cached entry of this drug goes, once more when the transaction ends so that a
+    // concurrent read cannot leave the previous stock behind
+    private void evictOnCompletion(long drugId) {
+        sessionFactory.getCache().evict(Drug.class, drugId);
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                sessionFactory.getCache().evict(Drug.class, drugId);
+            }
+        });
+    }
+
+    @Override
+    public List<TransferBatchResult> createTransfers(@NotNull @Size(max = MAX_BATCH_SIZE) List<TransferCreateDTO> transfers) {
+        TransferBatchResult[] results = new TransferBatchResult[transfers.size()];
+
+        // TreeMap so that drugs are always locked in ascending id order, concurrent batches cannot deadlock
+        Map<Long, List<Integer>> linesByDrug = new TreeMap<>();
+        for (int line = 0; line < transfers.size(); line++) {
+            TransferCreateDTO dto = transfers.get(line);
+            if (dto == null || dto.type() == null) {
+                transferMetrics.invalidLine();
+                results[line] = TransferBatchResult.rejected(line, "type must not be null");
+            } else if (dto.drugId() <= 0) {
+                transferMetrics.invalidLine();
+                results[line] = TransferBatchResult.rejected(line, "drugId must be greater than 0");
+            } else if (dto.quantity() <= 0) {
+                transferMetrics.invalidLine();
+                results[line] = TransferBatchResult.rejected(line, "quantity must be greater than 0");
+            } else {
+                linesByDrug.computeIfAbsent((long) dto.drugId(), id -> new ArrayList<>()).add(line);
+            }
+        }
+
+        Instant now = Instant.now();
+        List<Transfer> created = new ArrayList<>();
+        for (Map.Entry<Long, List<Integer>> entry : linesByDrug.entrySet()) {
+            Drug drug = Drug.findById(entry.getKey(), LockModeType.PESSIMISTIC_WRITE);
+
+            if (drug == null) {
+                entry.getValue().forEach(line -> {
+                    transferMetrics.drugNotFound();
+                    results[line] = TransferBatchResult.rejected(line, WarehouseError.DRUG_NOT_FOUND.message());
+                });
+                continue;
+            }
+
+            // lines of the same drug are applied in submission order, the drug row is updated once with the net delta
+            boolean wasLow = drug.isLowStock();
+            int stock = drug.getStock();
+            for (int line : entry.getValue()) {
+                TransferCreateDTO dto = transfers.get(line);
+                if (dto.type() == TransferType.OUT && stock < dto.quantity()) {
+                    transferMetrics.insufficientStock();
+                    results[line] = TransferBatchResult.rejected(line, WarehouseError.INSUFFICIENT_STOCK.message());
+                    continue;
+                }
+                stock += dto.type() == TransferType.IN ? dto.quantity() : -dto.quantity();
+
+                Transfer transfer = newTransfer(dto.type(), drug, dto.quantity(), now);
+                transfer.persist();
+                created.add(transfer);
+                transferCreated.fire(new TransferCreated(transfer));
+                results[line] = TransferBatchResult.created(line, transfer);
+            }
+            drug.setStock(stock);
+            fireIfCrossed(drug, wasLow);
+        }
+        dailyTransferRollup.add(created);
+
+        return Arrays.asList(results);
+    }
+
+    // only a crossing of the reorder level is an event, not every stock change below it
+    private void fireIfCrossed(Drug drug, boolean wasLow) {
+        if (drug.isLowStock() != wasLow) {
+            lowStockChanged.fire(LowStockChanged.of(drug));
+        }
+    }
+
+    // a concurrent retry that is not committed yet is not found here, the unique IDEMPOTENCY_KEY column rejects it
+    private Transfer findByIdempotencyKey(String idempotencyKey) {
+        Long transferId = idempotencyIndex.find(idempotencyKey);
+        if (transferId != null) {
+            Transfer transfer = Transfer.findById(transferId);
+            if (transfer != null && idempotencyKey.equals(transfer.getIdempotencyKey())) {
+                return transfer;
+            }
+            idempotencyIndex.remove(idempotencyKey);
+        }
+
+        Transfer transfer = Transfer.<Transfer>find("idempotencyKey", idempotencyKey).firstResult();
+        if (transfer != null) {
+            idempotencyIndex.put(idempotencyKey, transfer.id);
+            return transfer;
+        }
+
+        // a replay can arrive after the original was archived, TRANSFER is read first so that a transfer moved in
+        // between is still found on this side. Archived ones are not indexed, the index resolves ids in TRANSFER
+        if (transferArchive.watermark() == null) {
+            return null;
+        }
+        return Transfer.getEntityManager()
+                .createQuery("from ArchivedTransfer where idempotencyKey = ?1", ArchivedTransfer.class)
+                .setParameter(1, idempotencyKey)
+                .getResultStream()
+                .findFirst()
+                .map(ArchivedTransfer::toTransfer)
+                .orElse(null);
+    }
+
+    private Transfer newTransfer(TransferType type, Drug drug, int quantity, Instant transferDate) {
+        Transfer transfer = new Transfer();
+        transfer.setType(type);
+        transfer.setDrug(drug);
+        transfer.setQuantity(quantity);
+        transfer.setTransferDate(transferDate);
+        return transfer;
+    }
+
     @Override
     public PagedResult<Transfer> getTransfers(int page, int limit, List<Long> drugIds, Instant from, Instant to) {
-        page = Math.max(1, page);
-        limit = Math.max(1, Math.min(limit, 50));
+        return getTransfers(PageRequest.of(page, limit), drugIds, from, to);
+    }
+
+    @Override
+    public PagedResult<Transfer> getTransfers(PageRequest pageRequest, List<Long> drugIds, Instant from, Instant to) {
+        return this.<Transfer>transferPage(pageRequest, drugIds, from, to, PageCursor::of, HOT_TRANSFERS, ARCHIVED_TRANSFERS);
+    }
+
+    @Override
+    public PagedResult<TransferView> getTransferViews(PageRequest pageRequest, List<Long> drugIds, Instant from, Instant to) {
+        return this.<TransferView>transferPage(pageRequest, drugIds, from, to, PageCursor::of, HOT_VIEWS, ARCHIVED_VIEWS);
+    }
 
-        CriteriaBuilder cb = Transfer.getEntityManager().getCriteriaBuilder();
-        CriteriaQuery<Transfer> cq = cb.createQuery(Transfer.class);
-        Root<Transfer> root = cq.from(Transfer.class);
+    @Override
+    public StockLevel getStockAt(@Positive long drugId, @NotNull Instant at) {
+        Drug drug = Drug.findById(drugId);
+
+        if (drug == null) {
+            throw WarehouseError.DRUG_NOT_FOUND.exception();
+        }
 
-        List<Predicate> predicates = new ArrayList<>();
+        return stockSnapshots.stockAt(drug, at);
+    }
 
-        if (drugIds != null && !drugIds.isEmpty()) {
-            predicates.add(root.get(Transfer_.drug).get(Drug_.id).in(drugIds));
+    @Override
+    public List<TransferSummary> getTransferSummary(List<Long> drugIds, @NotNull LocalDate from, @NotNull LocalDate to,
+                                                    @NotNull SummaryGranularity granularity) {
+        if (from.isAfter(to)) {
+            throw WarehouseError.INVALID_RANGE.exception();
         }
+        return dailyTransferRollup.summarize(drugIds, from, to, granularity);
+    }
+
+    // one side of the transfer history: the entity it is stored as, the row the query selects, how a row becomes R and
+    // its queries by filter shape
+    private record Partition<P, R>(Class<P> rowType, Function<P, R> toResult, String[] rowQueries, String[] countQueries) {
+    }
+
+    private static final int WITH_DRUG_IDS = 1;
+    private static final int WITH_FROM = 2;
+    private static final int WITH_TO = 4;
+    private static final int WITH_CURSOR = 8;
+
+    // drug and category are eager, fetching them in the same statement avoids one select per row
+    private static final String SELECT_WITH_DRUG = "select t from %s t join fetch t.drug d join fetch d.category";
+
+    private static final String SELECT_VIEW = "select new " + TransferView.class.getName()
+            + "(t.id, t.type, t.quantity, t.transferDate, t.createdAt, d.id, d.code, d.name) from %s t join t.drug d";
+
+    // Transfer and ArchivedTransfer share attribute names, so the same queries are written for both
+    private static final Partition<Transfer, Transfer> HOT_TRANSFERS =
+            partition(Transfer.class, Transfer.class, SELECT_WITH_DRUG, Function.identity());
+    private static final Partition<ArchivedTransfer, Transfer> ARCHIVED_TRANSFERS =
+            partition(ArchivedTransfer.class, ArchivedTransfer.class, SELECT_WITH_DRUG, ArchivedTransfer::toTransfer);
+    private static final Partition<TransferView, TransferView> HOT_VIEWS =
+            partition(Transfer.class, TransferView.class, SELECT_VIEW, Function.identity());
+    private static final Partition<TransferView, TransferView> ARCHIVED_VIEWS =
+            partition(ArchivedTransfer.class, TransferView.class, SELECT_VIEW, Function.identity());
 
-        if (from != null) {
-            predicates.add(cb.greaterThanOrEqualTo(root.get(Transfer_.transferDate), from));
+    // Every filter shape has its HQL written once. Hibernate caches the interpretation of an HQL string, while a
+    // criteria tree was interpreted again on every call. drugIds is a single list parameter, with
+    // in_clause_parameter_padding its SQL is one of a few IN lists padded to a power of two.
+    private static <P, R> Partition<P, R> partition(Class<?> entity, Class<P> rowType, String select, Function<P, R> toResult) {
+        String[] rowQueries = new String[WITH_CURSOR << 1];
+        String[] countQueries = new String[WITH_CURSOR];
+        for (int shape = 0; shape < rowQueries.length; shape++) {
+            rowQueries[shape] = select.formatted(entity.getSimpleName()) + where(shape) + " order by t.createdAt desc, t.id desc";
         }
+        for (int shape = 0; shape < countQueries.length; shape++) {
+            countQueries[shape] = "select count(t) from " + entity.getSimpleName() + " t" + where(shape);
+        }
+        return new Partition<>(rowType, toResult, rowQueries, countQueries);
+    }
 
-        if (to != null) {
-            predicates.add(cb.lessThanOrEqualTo(root.get(Transfer_.transferDate), to));
+    private static String where(int shape) {
+        StringJoiner where = new StringJoiner(" and ", " where ", "").setEmptyValue("");
+        if ((shape & WITH_DRUG_IDS) != 0) {
+            where.add("t.drug.id in :drugIds");
+        }
+        if ((shape & WITH_FROM) != 0) {
+            where.add("t.transferDate >= :from");
+        }
+        if ((shape & WITH_TO) != 0) {
+            where.add("t.transferDate <= :to");
+        }
+        if ((shape & WITH_CURSOR) != 0) {
+            // the first conjunct is a plain range on the (CREATED_AT, ID) index, the second one breaks ties
+            where.add("t.createdAt <= :cursorCreatedAt and (t.createdAt < :cursorCreatedAt or t.id < :cursorId)");
+        }
+        return where.toString();
+    }
+
+    private static int shape(List<Long> drugIds, Instant from, Instant to) {
+        return (drugIds != null && !drugIds.isEmpty() ? WITH_DRUG_IDS : 0)
+                | (from != null ? WITH_FROM : 0)
+                | (to != null ? WITH_TO : 0);
+    }
+
+    private <R> PagedResult<R> transferPage(PageRequest pageRequest, List<Long> drugIds, Instant from, Instant to,
+                                            Function<R, PageCursor> cursorOf, Partition<?, R> hot, Partition<?, R> archived) {
+        Instant watermark = transferArchive.watermark();
+        List<Partition<?, R>> partitions = new ArrayList<>(2);
+        if (TransferArchive.coversHot(watermark, to)) {
+            partitions.add(hot);
+        }
+        if (TransferArchive.coversArchive(watermark, from)) {
+            partitions.add(archived);
         }
 
-        if (!predicates.isEmpty()) {
-            cq.where(predicates.toArray(new Predicate[0]));
+        PageCursor cursor = pageRequest.isKeyset() ? PageCursor.decode(pageRequest.cursor()) : null;
+        List<R> transfers;
+        if (partitions.size() == 1) {
+            transfers = rows(partitions.getFirst(), pageRequest.isKeyset() ? 0 : pageRequest.offset(), pageRequest.limit() + 1,
+                    drugIds, from, to, cursor);
+        } else {
+            // each side returns its own first offset + limit + 1 rows, merging them gives the same page a single table would
+            int offset = pageRequest.isKeyset() ? 0 : pageRequest.offset();
+            List<R> merged = new ArrayList<>();
+            for (Partition<?, R> partition : partitions) {
+                merged.addAll(rows(partition, 0, offset + pageRequest.limit() + 1, drugIds, from, to, cursor));
+            }
+            merged.sort(Comparator.comparing(cursorOf, PageCursor.NEWEST_FIRST));
+            transfers = merged.subList(Math.min(offset, merged.size()), Math.min(offset + pageRequest.limit() + 1, merged.size()));
         }
 
-        cq.orderBy(cb.desc(root.get(Transfer_.createdAt)));
+        if (!pageRequest.withTotals()) {
+            return pagedResult(pageRequest, null, null, transfers, cursorOf);
+        }
 
-        TypedQuery<Transfer> query = Transfer.getEntityManager().createQuery(cq);
-        query.setFirstResult((page - 1) * limit);
-        query.setMaxResults(limit);
+        // moving rows to the archive does not change how many match, the cached total stays valid
+        long count = countCache.count(transferCountKey(drugIds, from, to), () -> {
+            long total = 0;
+            for (Partition<?, R> partition : partitions) {
+                total += count(partition, drugIds, from, to);
+            }
+            return total;
+        });
+        int totalPages = (int) Math.ceil((double) count / pageRequest.limit());
 
-        List<Transfer> transfers = query.getResultList();
+        return pagedResult(pageRequest, count, totalPages, transfers, cursorOf);
+    }
 
-        CriteriaQuery<Long> countQuery = cb.createQuery(Long.class);
-        Root<Transfer> countRoot = countQuery.from(Transfer.class);
-        countQuery.select(cb.count(countRoot));
-        if (!predicates.isEmpty()) {
-            countQuery.where(predicates.toArray(new Predicate[0]));
+    private static <P, R> List<R> rows(Partition<P, R> partition, int firstResult, int maxResults,
+                                       List<Long> drugIds, Instant from, Instant to, PageCursor cursor) {
+        int shape = shape(drugIds, from, to) | (cursor != null ? WITH_CURSOR : 0);
+        TypedQuery<P> query = Transfer.getEntityManager().createQuery(partition.rowQueries()[shape], partition.rowType());
+        bind(query, shape, drugIds, from, to);
+        if (cursor != null) {
+            query.setParameter("cursorCreatedAt", cursor.createdAt());
+            query.setParameter("cursorId", cursor.id());
         }
+        if (firstResult > 0) {
+            query.setFirstResult(firstResult);
+        }
+        query.setMaxResults(maxResults);
 
-        Long count = Transfer.getEntityManager().createQuery(countQuery).getSingleResult();
-        int totalPages = (int) Math.ceil((double) count / limit);
+        return query.getResultList().stream().map(partition.toResult()).toList();
+    }
+
+    private static long count(Partition<?, ?> partition, List<Long> drugIds, Instant from, Instant to) {
+        int shape = shape(drugIds, from, to);
+        TypedQuery<Long> query = Transfer.getEntityManager().createQuery(partition.countQueries()[shape], Long.class);
+        bind(query, shape, drugIds, from, to);
+        return query.getSingleResult();
+    }
+
+    private static void bind(TypedQuery<?> query, int shape, List<Long> drugIds, Instant from, Instant to) {
+        if ((shape & WITH_DRUG_IDS) != 0) {
+            // duplicates would only push the list into a larger padding bucket
+            query.setParameter("drugIds", drugIds.stream().distinct().toList());
+        }
+        if ((shape & WITH_FROM) != 0) {
+            query.setParameter("from", from);
+        }
+        if ((shape & WITH_TO) != 0) {
+            query.setParameter("to", to);
+        }
+    }
+
+    private static String transferCountKey(List<Long> drugIds, Instant from, Instant to) {
+        String drugs = drugIds == null ? "" : drugIds.stream().distinct().sorted().map(String::valueOf).collect(Collectors.joining(","));
+        return "transfers|" + drugs + "|" + from + "|" + to;
+    }
 
-        return new PagedResult<>(page, limit, count, totalPages, transfers);
+    // items holds up to limit + 1 rows, the extra row only signals that a next page exists
+    private static <T> PagedResult<T> pagedResult(PageRequest pageRequest, Long totalItems, Integer totalPages, List<T> items,
+                                                  Function<T, PageCursor> cursorOf) {
+        boolean hasNext = items.size() > pageRequest.limit();
+        List<T> page = hasNext ? items.subList(0, pageRequest.limit()) : items;
+        String nextCursor = hasNext ? cursorOf.apply(page.getLast()).encode() : null;
+        return new PagedResult<>(pageRequest.page(), pageRequest.limit(), totalItems, totalPages, hasNext, nextCursor, page);
     }
 }
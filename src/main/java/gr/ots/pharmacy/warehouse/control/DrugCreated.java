@@ -0,0 +1,6 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.entity.Drug;
+
+public record DrugCreated(Drug drug) {
+}
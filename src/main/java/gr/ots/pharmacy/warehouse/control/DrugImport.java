@@ -0,0 +1,172 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import gr.ots.pharmacy.warehouse.entity.Category;
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import gr.ots.pharmacy.warehouse.entity.Drug_;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Loads a catalogue line by line with one transaction per chunk, so neither the persistence context nor a transaction
+// grows with the size of the upload. A line that fails is rejected on its own, the rest of its chunk is still imported.
+@ApplicationScoped
+public class DrugImport {
+
+    static final int MAX_REJECTIONS = 100;
+
+    private static final List<String> VALIDATED = List.of(Drug_.NAME, Drug_.CODE, Drug_.PRICE, Drug_.STOCK, Drug_.REORDER_LEVEL);
+
+    @ConfigProperty(name = "warehouse.import.chunk-size", defaultValue = "1000")
+    private int chunkSize;
+
+    // same as the JDBC batch, every flush sends exactly one batch of inserts
+    @ConfigProperty(name = "quarkus.hibernate-orm.jdbc.statement-batch-size", defaultValue = "50")
+    private int flushEvery;
+
+    @Inject
+    private Validator validator;
+
+    @Inject
+    private Event<DrugCreated> drugCreated;
+
+    private record Line(long number, DrugCreateDTO drug) {
+    }
+
+    private static class Tally {
+        private long imported;
+        private long rejected;
+        private final List<DrugImportResult.Rejection> rejections = new ArrayList<>();
+
+        private void reject(long line, String error) {
+            rejected++;
+            if (rejections.size() < MAX_REJECTIONS) {
+                rejections.add(new DrugImportResult.Rejection(line, error));
+            }
+        }
+
+        // the outcome of a committed chunk, rejections stay in line order as long as chunks are added in order
+        private void add(Tally chunk) {
+            imported += chunk.imported;
+            rejected += chunk.rejected;
+            chunk.rejections.stream().limit(MAX_REJECTIONS - rejections.size()).forEach(rejections::add);
+        }
+    }
+
+    // lines are numbered from 1 in the order they are read, blank lines are skipped but counted
+    public DrugImportResult importDrugs(Iterator<String> lines, Function<String, DrugCreateDTO> parser) {
+        Tally tally = new Tally();
+        List<Line> chunk = new ArrayList<>(chunkSize);
+        long number = 0;
+        while (lines.hasNext()) {
+            String line = lines.next();
+            number++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                chunk.add(new Line(number, parser.apply(line)));
+            } catch (IllegalArgumentException e) {
+                tally.reject(number, e.getMessage());
+            }
+            if (chunk.size() == chunkSize) {
+                importChunk(chunk, tally);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            importChunk(chunk, tally);
+        }
+        return new DrugImportResult(tally.imported, tally.rejected, List.copyOf(tally.rejections));
+    }
+
+    // the codes are checked up front, only a concurrent insert of the same code still fails the chunk on the unique
+    // constraint. Its lines are then retried one by one, so the loser is rejected and the rest of the chunk imported
+    private void importChunk(List<Line> chunk, Tally tally) {
+        try {
+            tally.add(commit(chunk));
+        } catch (RuntimeException e) {
+            if (!DefaultWarehouseService.isIntegrityViolation(e)) {
+                throw e;
+            }
+            for (Line line : chunk) {
+                try {
+                    tally.add(commit(List.of(line)));
+                } catch (RuntimeException lineFailure) {
+                    if (!DefaultWarehouseService.isIntegrityViolation(lineFailure)) {
+                        throw lineFailure;
+                    }
+                    tally.reject(line.number(), "Duplication found");
+                }
+            }
+        }
+    }
+
+    // the outcome of the lines counts only once their transaction committed
+    private Tally commit(List<Line> chunk) {
+        return QuarkusTransaction.requiringNew().call(() -> {
+            Tally tally = new Tally();
+            EntityManager em = Drug.getEntityManager();
+
+            Set<Long> categoryIds = chunk.stream().map(line -> (long) line.drug().categoryId()).collect(Collectors.toSet());
+            Map<Long, Category> categories = Category.<Category>list("id in ?1", categoryIds).stream()
+                    .collect(Collectors.toMap(category -> category.id, Function.identity()));
+
+            Set<String> codes = chunk.stream().map(line -> line.drug().code()).filter(Objects::nonNull).collect(Collectors.toSet());
+            Set<String> taken = codes.isEmpty() ? new HashSet<>() : new HashSet<>(em
+                    .createQuery("select d.code from Drug d where d.code in :codes", String.class)
+                    .setParameter("codes", codes)
+                    .getResultList());
+
+            for (Line line : chunk) {
+                Category category = categories.get((long) line.drug().categoryId());
+                if (category == null) {
+                    tally.reject(line.number(), "Category not found");
+                    continue;
+                }
+
+                Drug drug = new Drug(line.drug(), category);
+                String violation = violation(drug);
+                if (violation != null) {
+                    tally.reject(line.number(), violation);
+                    continue;
+                }
+                if (!taken.add(drug.getCode())) {
+                    tally.reject(line.number(), "Duplication found");
+                    continue;
+                }
+
+                drug.persist();
+                drugCreated.fire(new DrugCreated(drug));
+                // the categories become detached as well, a detached reference is enough for the foreign key
+                if (++tally.imported % flushEvery == 0) {
+                    em.flush();
+                    em.clear();
+                }
+            }
+            // a violation surfaces here rather than wrapped by the commit
+            em.flush();
+            return tally;
+        });
+    }
+
+    // createdAt and version are only set on persist, validating the whole entity here would always fail on them
+    private String violation(Drug drug) {
+        for (String property : VALIDATED) {
+            Set<ConstraintViolation<Drug>> violations = validator.validateProperty(drug, property);
+            if (!violations.isEmpty()) {
+                return property + " " + violations.iterator().next().getMessage();
+            }
+        }
+        return null;
+    }
+}
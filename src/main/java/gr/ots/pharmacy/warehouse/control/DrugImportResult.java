@@ -0,0 +1,10 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import java.util.List;
+
+// rejections holds the first DrugImport.MAX_REJECTIONS rejected lines only, rejected counts all of them
+public record DrugImportResult(long imported, long rejected, List<Rejection> rejections) {
+
+    public record Rejection(long line, String error) {
+    }
+}
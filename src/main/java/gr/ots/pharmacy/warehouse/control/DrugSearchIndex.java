@@ -0,0 +1,162 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.transaction.Transactional;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+// In-memory index of drug codes and name tokens, built at startup and kept up to date from DrugCreated. Codes match
+// by prefix, every word of the query must match the start of a word of the name. Matching ignores case and accents,
+// so "παρακεταμολη" finds "Παρακεταμόλη" and "ibuprofene" finds "Ibuprofène". A query word shorter than
+// MIN_PREFIX only matches whole codes and words, one or two letters would expand to most of the catalogue.
+@ApplicationScoped
+public class DrugSearchIndex {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final int EXACT_CODE = 100;
+    private static final int CODE_PREFIX = 50;
+    private static final int EXACT_WORD = 2;
+    private static final int WORD_PREFIX = 1;
+
+    static final int MIN_PREFIX = 3;
+
+    private record Indexed(long id, String code) {
+    }
+
+    // the best ranked ids up to the requested number, and how many drugs matched in total
+    public record Matches(List<Long> ids, int total) {
+    }
+
+    private static final Comparator<Map.Entry<Indexed, Integer>> BEST_FIRST = Map.Entry.<Indexed, Integer>comparingByValue().reversed()
+            .thenComparing(entry -> entry.getKey().code());
+
+    private static class Index {
+        // normalized code -> drugs, CODE is only unique as written so codes that differ in case or accents share a key
+        private final ConcurrentNavigableMap<String, Set<Indexed>> codes = new ConcurrentSkipListMap<>();
+        // normalized name word -> drugs whose name contains it
+        private final ConcurrentNavigableMap<String, Set<Indexed>> words = new ConcurrentSkipListMap<>();
+
+        private void add(long id, String code, String name) {
+            Indexed indexed = new Indexed(id, code);
+            codes.computeIfAbsent(normalize(code), key -> ConcurrentHashMap.newKeySet()).add(indexed);
+            for (String word : words(name)) {
+                words.computeIfAbsent(word, key -> ConcurrentHashMap.newKeySet()).add(indexed);
+            }
+        }
+    }
+
+    private volatile Index index = new Index();
+
+    void onStart(@Observes StartupEvent event) {
+        reload();
+    }
+
+    // rebuilds from the database and swaps the whole index, a drug committed while the table is read may only show up
+    // after the next reload, at startup nothing is served yet
+    @Transactional
+    public void reload() {
+        Index rebuilt = new Index();
+        Session session = Drug.getEntityManager().unwrap(Session.class);
+        try (ScrollableResults<Object[]> rows = session.createSelectionQuery("select d.id, d.code, d.name from Drug d", Object[].class)
+                .setReadOnly(true)
+                .setFetchSize(1000)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            while (rows.next()) {
+                Object[] row = rows.get();
+                rebuilt.add((Long) row[0], (String) row[1], (String) row[2]);
+            }
+        }
+        index = rebuilt;
+    }
+
+    void afterDrugCreated(@Observes(during = TransactionPhase.AFTER_SUCCESS) DrugCreated event) {
+        index.add(event.drug().id, event.drug().getCode(), event.drug().getName());
+    }
+
+    // ids of the best max matching drugs, best match first, ties by code
+    public Matches search(String query, int max) {
+        String code = normalize(query);
+        List<String> queryWords = words(query);
+        if (code.isEmpty() && queryWords.isEmpty()) {
+            return new Matches(List.of(), 0);
+        }
+
+        Index index = this.index;
+        Map<Indexed, Integer> scores = new HashMap<>();
+
+        prefixed(index.codes, code).forEach((indexedCode, drugs) -> {
+            int score = indexedCode.equals(code) ? EXACT_CODE : CODE_PREFIX;
+            drugs.forEach(drug -> scores.merge(drug, score, Integer::sum));
+        });
+
+        Map<Indexed, Integer> nameScores = null;
+        for (String word : queryWords) {
+            Map<Indexed, Integer> wordScores = new HashMap<>();
+            prefixed(index.words, word).forEach((indexedWord, drugs) -> {
+                int score = indexedWord.equals(word) ? EXACT_WORD : WORD_PREFIX;
+                drugs.forEach(drug -> wordScores.merge(drug, score, Math::max));
+            });
+            if (nameScores == null) {
+                nameScores = wordScores;
+            } else {
+                // every word has to match
+                nameScores.keySet().retainAll(wordScores.keySet());
+                nameScores.replaceAll((drug, score) -> score + wordScores.get(drug));
+            }
+            if (nameScores.isEmpty()) {
+                break;
+            }
+        }
+        if (nameScores != null) {
+            nameScores.forEach((drug, score) -> scores.merge(drug, score, Integer::sum));
+        }
+
+        // only the requested page and the ones before it are ranked, the heap holds the best max seen so far
+        PriorityQueue<Map.Entry<Indexed, Integer>> best = new PriorityQueue<>(BEST_FIRST.reversed());
+        for (Map.Entry<Indexed, Integer> entry : scores.entrySet()) {
+            best.add(entry);
+            if (best.size() > max) {
+                best.poll();
+            }
+        }
+        List<Map.Entry<Indexed, Integer>> ranked = new ArrayList<>(best);
+        ranked.sort(BEST_FIRST);
+        return new Matches(ranked.stream().map(entry -> entry.getKey().id()).toList(), scores.size());
+    }
+
+    private static <V> Map<String, V> prefixed(ConcurrentNavigableMap<String, V> map, String prefix) {
+        if (prefix.length() < MIN_PREFIX) {
+            V exact = map.get(prefix);
+            return exact == null ? Map.of() : Map.of(prefix, exact);
+        }
+        return map.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+    }
+
+    // lower case without accents, the final sigma is folded so that it matches the medial one
+    static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text.strip(), Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT).replace('ς', 'σ');
+    }
+
+    private static List<String> words(String text) {
+        return Arrays.stream(SEPARATORS.split(normalize(text)))
+                .filter(word -> !word.isEmpty())
+                .distinct()
+                .toList();
+    }
+}
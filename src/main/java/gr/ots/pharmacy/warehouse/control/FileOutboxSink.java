@@ -0,0 +1,62 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.entity.TransferOutbox;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+
+// Appends one JSON line per transfer. The batch is forced to disk before the relay deletes its rows. Once the file
+// would grow past warehouse.outbox.file-max-bytes it is renamed to <file>.<epoch millis> and a new one is started,
+// a batch is never split across two files. Rotated files are complete, the reader deletes them once processed.
+@ApplicationScoped
+public class FileOutboxSink implements OutboxSink {
+
+    @ConfigProperty(name = "warehouse.outbox.file", defaultValue = "outbox/transfers.ndjson")
+    private String path;
+
+    @ConfigProperty(name = "warehouse.outbox.file-max-bytes", defaultValue = "67108864")
+    private long maxBytes;
+
+    @Override
+    public synchronized void deliver(List<TransferOutbox> batch) throws IOException {
+        Path file = Path.of(path);
+        StringBuilder lines = new StringBuilder();
+        batch.forEach(message -> lines.append(message.getPayload()).append('\n'));
+        byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        long size = Files.exists(file) ? Files.size(file) : 0;
+        if (size > 0 && size + bytes.length > maxBytes) {
+            Files.move(file, rotated(file), StandardCopyOption.ATOMIC_MOVE);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    // a rename onto an existing file would replace it, two rotations within the same millisecond get the next one
+    private static Path rotated(Path file) {
+        long millis = Instant.now().toEpochMilli();
+        Path rotated;
+        while (Files.exists(rotated = file.resolveSibling(file.getFileName() + "." + millis))) {
+            millis++;
+        }
+        return rotated;
+    }
+}
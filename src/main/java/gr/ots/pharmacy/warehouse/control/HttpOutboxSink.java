@@ -0,0 +1,52 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.entity.TransferOutbox;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// POSTs every batch as one NDJSON body, anything but a 2xx leaves the batch in the outbox
+@ApplicationScoped
+public class HttpOutboxSink implements OutboxSink {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @ConfigProperty(name = "warehouse.outbox.http.url", defaultValue = "http://localhost:8080/accounting/transfers")
+    private URI url;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(TIMEOUT)
+            .build();
+
+    @Override
+    public void deliver(List<TransferOutbox> batch) throws IOException {
+        String body = batch.stream()
+                .map(message -> message.getPayload() + "\n")
+                .collect(Collectors.joining());
+        HttpRequest request = HttpRequest.newBuilder(url)
+                .timeout(TIMEOUT)
+                .header("Content-Type", "application/x-ndjson")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+
+        HttpResponse<Void> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Outbox delivery interrupted");
+        }
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("Outbox delivery failed with status " + response.statusCode());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Idempotency-Key -> transfer id of recently committed transfers. The unique IDEMPOTENCY_KEY column stays the
+// source of truth, this only saves the lookup query for retries that arrive shortly after the original request.
+@ApplicationScoped
+public class IdempotencyIndex {
+
+    @ConfigProperty(name = "warehouse.idempotency.max-keys", defaultValue = "100000")
+    private int maxKeys;
+
+    private final Map<String, Long> transferIds = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > maxKeys;
+        }
+    };
+
+    public synchronized Long find(String key) {
+        return transferIds.get(key);
+    }
+
+    public synchronized void put(String key, long transferId) {
+        transferIds.put(key, transferId);
+    }
+
+    public synchronized void remove(String key) {
+        transferIds.remove(key);
+    }
+
+    // only committed transfers are indexed, a rolled back request can be retried with the same key
+    void afterTransferCreated(@Observes(during = TransactionPhase.AFTER_SUCCESS) TransferCreated event) {
+        String key = event.transfer().getIdempotencyKey();
+        if (key != null) {
+            put(key, event.transfer().id);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package gr.ots.pharmacy.warehouse.control;
+
+public record IngestionStatus(String trackingId, State state, Long transferId, String error) {
+
+    public enum State {
+        // στην ουρά, δεν έχει γραφτεί ακόμα
+        QUEUED,
+        // γράφτηκε, transferId είναι η κίνηση που δημιουργήθηκε
+        CREATED,
+        // απορρίφθηκε, error είναι ο λόγος
+        REJECTED
+    }
+
+    static IngestionStatus queued(String trackingId) {
+        return new IngestionStatus(trackingId, State.QUEUED, null, null);
+    }
+
+    static IngestionStatus of(String trackingId, TransferBatchResult result) {
+        return result.transferId() != null
+                ? new IngestionStatus(trackingId, State.CREATED, result.transferId(), null)
+                : new IngestionStatus(trackingId, State.REJECTED, null, result.error());
+    }
+}
@@ -0,0 +1,11 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.entity.Drug;
+
+// Fired when a drug crosses its reorder level in either direction, lowStock is the state after the change
+public record LowStockChanged(long drugId, String code, String name, int stock, int reorderLevel, boolean lowStock) {
+
+    public static LowStockChanged of(Drug drug) {
+        return new LowStockChanged(drug.id, drug.getCode(), drug.getName(), drug.getStock(), drug.getReorderLevel(), drug.isLowStock());
+    }
+}
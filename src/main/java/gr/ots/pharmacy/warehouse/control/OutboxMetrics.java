@@ -0,0 +1,37 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+// Exported transfers and failed deliveries, the counters are registered once so the relay only increments
+@ApplicationScoped
+public class OutboxMetrics {
+
+    @Inject
+    private MeterRegistry registry;
+
+    private Counter delivered;
+
+    private Counter failures;
+
+    @PostConstruct
+    void register() {
+        delivered = Counter.builder("warehouse.outbox.delivered")
+                .description("Transfers accepted by the outbox sink")
+                .register(registry);
+        failures = Counter.builder("warehouse.outbox.failures")
+                .description("Outbox batches the sink failed to accept")
+                .register(registry);
+    }
+
+    public void delivered(int transfers) {
+        delivered.increment(transfers);
+    }
+
+    public void failed() {
+        failures.increment();
+    }
+}
@@ -0,0 +1,116 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.entity.TransferOutbox;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.json.bind.Jsonb;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+// Transactional outbox of the created transfers. The row is persisted with the transfer, so it exists exactly when the
+// transfer committed. The relay reads the outbox in id order and deletes a batch only after the sink accepted it:
+// the undelivered rows are the position, a transaction that commits a lower id late is still picked up on the next
+// run, and every run reads only rows it has not delivered yet instead of scanning TRANSFER by time. After a failed
+// delivery the scheduled runs back off, doubling from one second up to warehouse.outbox.max-backoff.
+@ApplicationScoped
+public class OutboxRelay {
+
+    private static final Logger LOG = Logger.getLogger(OutboxRelay.class);
+
+    @ConfigProperty(name = "warehouse.outbox.batch-size", defaultValue = "500")
+    private int batchSize;
+
+    @ConfigProperty(name = "warehouse.outbox.sink", defaultValue = "FILE")
+    private OutboxSinkType sinkType;
+
+    @ConfigProperty(name = "warehouse.outbox.max-backoff", defaultValue = "5m")
+    private Duration maxBackoff;
+
+    @Inject
+    private FileOutboxSink fileSink;
+
+    @Inject
+    private HttpOutboxSink httpSink;
+
+    @Inject
+    private Jsonb jsonb;
+
+    @Inject
+    private OutboxMetrics outboxMetrics;
+
+    // consecutive failed runs, and the System.nanoTime() before which the scheduled runs are skipped
+    private volatile int failures;
+
+    private volatile long retryAt;
+
+    private OutboxSink sink;
+
+    @PostConstruct
+    void init() {
+        sink = switch (sinkType) {
+            case FILE -> fileSink;
+            case HTTP -> httpSink;
+        };
+    }
+
+    // same transaction as the transfer, the insert goes out in the JDBC batch of its flush
+    void onTransferCreated(@Observes TransferCreated event) {
+        new TransferOutbox(event.transfer().id, jsonb.toJson(TransferView.of(event.transfer()))).persist();
+    }
+
+    @Scheduled(every = "{warehouse.outbox.every}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void scheduled() {
+        if (failures > 0 && System.nanoTime() - retryAt < 0) {
+            return;
+        }
+        try {
+            relay();
+            failures = 0;
+        } catch (IOException e) {
+            // the batch stays in the outbox and is retried once the backoff has passed
+            Duration backoff = backoff(++failures, maxBackoff);
+            retryAt = System.nanoTime() + backoff.toNanos();
+            LOG.warnf("Outbox delivery failed %d times in a row, next attempt in %s: %s", failures, backoff, e.getMessage());
+        }
+    }
+
+    static Duration backoff(int failures, Duration max) {
+        Duration backoff = Duration.ofSeconds(1L << Math.min(failures - 1, 30));
+        return backoff.compareTo(max) > 0 ? max : backoff;
+    }
+
+    // delivers until the outbox is drained, the sink is called outside any transaction
+    public int relay() throws IOException {
+        int delivered = 0;
+        while (true) {
+            List<TransferOutbox> batch = QuarkusTransaction.requiringNew()
+                    .call(() -> TransferOutbox.<TransferOutbox>find("order by id").page(0, batchSize).list());
+            if (batch.isEmpty()) {
+                return delivered;
+            }
+
+            try {
+                sink.deliver(batch);
+            } catch (IOException e) {
+                outboxMetrics.failed();
+                throw e;
+            }
+            outboxMetrics.delivered(batch.size());
+            List<Long> ids = batch.stream().map(TransferOutbox::getId).toList();
+            QuarkusTransaction.requiringNew().run(() -> TransferOutbox.delete("id in ?1", ids));
+            delivered += batch.size();
+
+            if (batch.size() < batchSize) {
+                return delivered;
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.entity.TransferOutbox;
+
+import java.io.IOException;
+import java.util.List;
+
+// Destination of the exported transfers. A batch that throws is delivered again on the next run, so a sink sees a
+// transfer at least once and the receiver deduplicates by its id.
+public interface OutboxSink {
+
+    void deliver(List<TransferOutbox> batch) throws IOException;
+}
@@ -0,0 +1,8 @@
+package gr.ots.pharmacy.warehouse.control;
+
+public enum OutboxSinkType {
+    // προσθήκη των κινήσεων ως NDJSON σε τοπικό αρχείο
+    FILE,
+    // αποστολή κάθε batch ως NDJSON με POST στο λογιστήριο
+    HTTP
+}
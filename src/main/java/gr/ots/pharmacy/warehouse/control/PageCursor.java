@@ -0,0 +1,42 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.entity.BaseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Comparator;
+
+// Opaque position of the last item of a page, in the (createdAt DESC, id DESC) order of the listings
+record PageCursor(Instant createdAt, long id) {
+
+    static final Comparator<PageCursor> NEWEST_FIRST = Comparator.comparing(PageCursor::createdAt)
+            .thenComparingLong(PageCursor::id)
+            .reversed();
+
+    static PageCursor of(BaseEntity entity) {
+        return new PageCursor(entity.getCreatedAt(), entity.id);
+    }
+
+    static PageCursor of(TransferView view) {
+        return new PageCursor(view.createdAt(), view.id());
+    }
+
+    static PageCursor decode(String token) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":");
+            if (parts.length != 3) {
+                throw WarehouseError.INVALID_CURSOR.exception();
+            }
+            return new PageCursor(Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1])), Long.parseLong(parts[2]));
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException and malformed base64 are both IllegalArgumentExceptions
+            throw WarehouseError.INVALID_CURSOR.exception();
+        }
+    }
+
+    String encode() {
+        String raw = createdAt.getEpochSecond() + ":" + createdAt.getNano() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,27 @@
+package gr.ots.pharmacy.warehouse.control;
+
+public record PageRequest(int page, int limit, String cursor, boolean withTotals) {
+
+    public static final int MAX_LIMIT = 50;
+
+    public PageRequest {
+        page = Math.max(1, page);
+        limit = Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+
+    public PageRequest(int page, int limit, String cursor) {
+        this(page, limit, cursor, true);
+    }
+
+    public static PageRequest of(int page, int limit) {
+        return new PageRequest(page, limit, null);
+    }
+
+    boolean isKeyset() {
+        return cursor != null && !cursor.isBlank();
+    }
+
+    int offset() {
+        return (page - 1) * limit;
+    }
+}
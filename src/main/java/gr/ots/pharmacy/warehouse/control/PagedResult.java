@@ -2,5 +2,6 @@ package gr.ots.pharmacy.warehouse.control;
 
 import java.util.List;
 
-public record PagedResult<T>(int page, int limit, long totalItems, int totalPages, List<T> items) {
+// totalItems and totalPages are null when the page was requested with withTotals=false
+public record PagedResult<T>(int page, int limit, Long totalItems, Integer totalPages, boolean hasNext, String nextCursor, List<T> items) {
 }
@@ -0,0 +1,46 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+// Hits and misses of Hibernate's HQL interpretation cache, read from the session factory statistics on every scrape.
+// A falling hit ratio means queries are built with varying strings again.
+@ApplicationScoped
+public class QueryPlanMetrics {
+
+    private static final String PLAN_CACHE = "warehouse.query.plan.cache";
+
+    @Inject
+    private MeterRegistry registry;
+
+    @Inject
+    private SessionFactory sessionFactory;
+
+    void onStart(@Observes StartupEvent event) {
+        Statistics statistics = sessionFactory.getStatistics();
+        FunctionCounter.builder(PLAN_CACHE, statistics, Statistics::getQueryPlanCacheHitCount)
+                .description("HQL interpretations served from the query plan cache")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder(PLAN_CACHE, statistics, Statistics::getQueryPlanCacheMissCount)
+                .description("HQL interpretations served from the query plan cache")
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder(PLAN_CACHE + ".hit.ratio", statistics, QueryPlanMetrics::hitRatio)
+                .description("Share of HQL interpretations served from the query plan cache")
+                .register(registry);
+    }
+
+    public static double hitRatio(Statistics statistics) {
+        long hits = statistics.getQueryPlanCacheHitCount();
+        long total = hits + statistics.getQueryPlanCacheMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,7 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import java.time.Instant;
+
+// snapshotAt is the checkpoint the stock was derived from, null when it was derived from the current stock
+public record StockLevel(long drugId, Instant at, int stock, Instant snapshotAt) {
+}
@@ -0,0 +1,123 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.transaction.Transactional;
+import org.hibernate.query.NativeQuery;
+import org.jboss.logging.Logger;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+
+// Daily per-drug stock checkpoints. The stock at any instant is the nearest checkpoint (or the current stock) moved by
+// the transfers between the two, so a query reads at most one day of a drug's transfers instead of its whole history.
+@ApplicationScoped
+public class StockSnapshots {
+
+    private static final Logger LOG = Logger.getLogger(StockSnapshots.class);
+
+    private static final String SNAPSHOT_TABLE = "DRUG_STOCK_SNAPSHOT";
+
+    private static final String DELTA = "CASE WHEN t.TYPE = 'IN' THEN t.QUANTITY ELSE -t.QUANTITY END";
+
+    // only drugs that moved since their last checkpoint or have none yet get a row, the previous row is still valid
+    // for every other drug
+    private static final String CHECKPOINT = """
+            INSERT INTO DRUG_STOCK_SNAPSHOT (DRUG_ID, SNAPSHOT_AT, STOCK)
+            SELECT d.ID, :checkpoint,
+                   d.STOCK - COALESCE((SELECT SUM(%1$s) FROM TRANSFER t WHERE t.DRUG_ID = d.ID AND t.TRANSFER_DATE > :checkpoint), 0)
+            FROM DRUG d
+            WHERE d.CREATED_AT <= :checkpoint
+              AND NOT EXISTS (SELECT 1 FROM DRUG_STOCK_SNAPSHOT s WHERE s.DRUG_ID = d.ID AND s.SNAPSHOT_AT >= :checkpoint)
+              AND (NOT EXISTS (SELECT 1 FROM DRUG_STOCK_SNAPSHOT s WHERE s.DRUG_ID = d.ID)
+                   OR EXISTS (SELECT 1 FROM TRANSFER t WHERE t.DRUG_ID = d.ID AND t.TRANSFER_DATE <= :checkpoint
+                              AND t.TRANSFER_DATE > (SELECT MAX(s.SNAPSHOT_AT) FROM DRUG_STOCK_SNAPSHOT s WHERE s.DRUG_ID = d.ID)))
+            """.formatted(DELTA);
+
+    @Inject
+    private TransferArchive transferArchive;
+
+    @Scheduled(cron = "{warehouse.snapshot.cron}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    @Transactional
+    void daily() {
+        Instant checkpoint = LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant();
+        LOG.infof("Stock checkpoint at %s written for %d drugs", checkpoint, checkpoint(checkpoint));
+    }
+
+    @Transactional
+    public int checkpoint(Instant checkpoint) {
+        // the transfers after the checkpoint are read from TRANSFER only
+        Instant watermark = transferArchive.watermark();
+        if (watermark != null && checkpoint.isBefore(watermark)) {
+            throw WarehouseError.CHECKPOINT_BEFORE_WATERMARK.exception();
+        }
+
+        Query insert = Drug.getEntityManager().createNativeQuery(CHECKPOINT)
+                .setParameter("checkpoint", checkpoint);
+        insert.unwrap(NativeQuery.class).addSynchronizedQuerySpace(SNAPSHOT_TABLE);
+        return insert.executeUpdate();
+    }
+
+    StockLevel stockAt(Drug drug, Instant at) {
+        if (at.isBefore(drug.getCreatedAt())) {
+            return new StockLevel(drug.id, at, 0, null);
+        }
+
+        EntityManager em = Drug.getEntityManager();
+
+        Object[] floor = snapshot(em, "SNAPSHOT_AT <= :at ORDER BY SNAPSHOT_AT DESC", drug.id, at);
+        if (floor != null) {
+            Instant snapshotAt = (Instant) floor[0];
+            return new StockLevel(drug.id, at, (Integer) floor[1] + delta(em, drug.id, snapshotAt, at), snapshotAt);
+        }
+
+        // no checkpoint before the instant yet, walk back from the next checkpoint or from the current stock
+        Object[] ceiling = snapshot(em, "SNAPSHOT_AT > :at ORDER BY SNAPSHOT_AT", drug.id, at);
+        if (ceiling != null) {
+            Instant snapshotAt = (Instant) ceiling[0];
+            return new StockLevel(drug.id, at, (Integer) ceiling[1] - delta(em, drug.id, at, snapshotAt), snapshotAt);
+        }
+        return new StockLevel(drug.id, at, drug.getStock() - delta(em, drug.id, at, null), null);
+    }
+
+    private static Object[] snapshot(EntityManager em, String condition, long drugId, Instant at) {
+        NativeQuery<Object[]> query = em.createNativeQuery("SELECT SNAPSHOT_AT, STOCK FROM " + SNAPSHOT_TABLE
+                        + " WHERE DRUG_ID = :drugId AND " + condition)
+                .unwrap(NativeQuery.class);
+        query.addScalar("SNAPSHOT_AT", Instant.class)
+                .addScalar("STOCK", Integer.class);
+        query.setParameter("drugId", drugId);
+        query.setParameter("at", at);
+        query.setMaxResults(1);
+        List<Object[]> rows = query.getResultList();
+        return rows.isEmpty() ? null : rows.getFirst();
+    }
+
+    // net movement of the transfers in (from, to], to == null means up to now
+    private int delta(EntityManager em, long drugId, Instant from, Instant to) {
+        int delta = delta(em, "TRANSFER", drugId, from, to);
+        if (TransferArchive.coversArchive(transferArchive.watermark(), from)) {
+            delta += delta(em, "TRANSFER_ARCHIVE", drugId, from, to);
+        }
+        return delta;
+    }
+
+    private static int delta(EntityManager em, String table, long drugId, Instant from, Instant to) {
+        NativeQuery<Long> query = em.createNativeQuery("SELECT COALESCE(SUM(" + DELTA + "), 0) AS DELTA FROM " + table + " t"
+                        + " WHERE t.DRUG_ID = :drugId AND t.TRANSFER_DATE > :from" + (to != null ? " AND t.TRANSFER_DATE <= :to" : ""))
+                .unwrap(NativeQuery.class);
+        query.addScalar("DELTA", Long.class);
+        query.setParameter("drugId", drugId);
+        query.setParameter("from", from);
+        if (to != null) {
+            query.setParameter("to", to);
+        }
+        return query.getSingleResult().intValue();
+    }
+}
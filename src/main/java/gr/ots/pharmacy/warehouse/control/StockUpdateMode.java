@@ -0,0 +1,8 @@
+package gr.ots.pharmacy.warehouse.control;
+
+public enum StockUpdateMode {
+    // φόρτωση του φαρμάκου, έλεγχος αποθέματος στη Java και optimistic locking μέσω του version
+    OPTIMISTIC,
+    // ατομικό conditional update (stock = stock - ? WHERE stock >= ?) χωρίς έλεγχο version
+    ATOMIC
+}
@@ -0,0 +1,19 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+public enum SummaryGranularity {
+    DAY,
+    WEEK,
+    MONTH;
+
+    LocalDate periodOf(LocalDate day) {
+        return switch (this) {
+            case DAY -> day;
+            case WEEK -> day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> day.withDayOfMonth(1);
+        };
+    }
+}
@@ -0,0 +1,91 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.entity.Transfer;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.transaction.Transactional;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.query.NativeQuery;
+import org.jboss.logging.Logger;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+
+// Transfer history is split by TRANSFER_DATE at the watermark: recent months stay in TRANSFER, older ones are moved
+// to TRANSFER_ARCHIVE. Listings only query the side(s) their from/to range overlaps.
+@ApplicationScoped
+public class TransferArchive {
+
+    private static final Logger LOG = Logger.getLogger(TransferArchive.class);
+
+    private static final String COLUMNS = "ID, TYPE, DRUG_ID, QUANTITY, TRANSFER_DATE, CREATED_AT, UPDATED_AT, VERSION, IDEMPOTENCY_KEY";
+
+    @ConfigProperty(name = "warehouse.archive.hot-months", defaultValue = "6")
+    private int hotMonths;
+
+    // months start in the same zone as the days of the daily rollup, not in the zone of the host
+    @ConfigProperty(name = "warehouse.rollup.zone", defaultValue = "UTC")
+    private String zone;
+
+    @Scheduled(cron = "{warehouse.archive.cron}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void monthly() {
+        ZoneId zoneId = ZoneId.of(zone);
+        Instant target = LocalDate.now(zoneId).withDayOfMonth(1).minusMonths(hotMonths).atStartOfDay(zoneId).toInstant();
+        int moved = archive(target);
+        if (moved > 0) {
+            LOG.infof("Archived %d transfers before %s", moved, target);
+        }
+    }
+
+    // the watermark only moves forward, moving it back would need rows to travel from the archive to TRANSFER. Its
+    // row stays locked until commit, so two instances never move the same month at once
+    @Transactional
+    public int archive(Instant target) {
+        Instant current = readWatermark(" FOR UPDATE");
+        if (current != null && !target.isAfter(current)) {
+            return 0;
+        }
+
+        EntityManager em = Transfer.getEntityManager();
+        int moved = execute(em, "INSERT INTO TRANSFER_ARCHIVE (" + COLUMNS + ") SELECT " + COLUMNS
+                + " FROM TRANSFER WHERE TRANSFER_DATE < :watermark", target);
+        execute(em, "DELETE FROM TRANSFER WHERE TRANSFER_DATE < :watermark", target);
+        execute(em, "UPDATE TRANSFER_ARCHIVE_STATE SET WATERMARK = :watermark WHERE ID = 1", target);
+        return moved;
+    }
+
+    // transfers with a TRANSFER_DATE before the watermark are archived, null when nothing has been archived yet. Read
+    // from its single row on every call: another instance may have archived since, and a stale watermark would hide the
+    // rows it moved. Callers that need it twice read it once and pass it on
+    public Instant watermark() {
+        return readWatermark("");
+    }
+
+    public static boolean coversHot(Instant watermark, Instant to) {
+        return watermark == null || to == null || !to.isBefore(watermark);
+    }
+
+    public static boolean coversArchive(Instant watermark, Instant from) {
+        return watermark != null && (from == null || from.isBefore(watermark));
+    }
+
+    private static Instant readWatermark(String lock) {
+        NativeQuery<Instant> query = Transfer.getEntityManager()
+                .createNativeQuery("SELECT WATERMARK FROM TRANSFER_ARCHIVE_STATE WHERE ID = 1" + lock)
+                .unwrap(NativeQuery.class);
+        query.addScalar("WATERMARK", Instant.class);
+        List<Instant> rows = query.getResultList();
+        return rows.isEmpty() ? null : rows.getFirst();
+    }
+
+    private static int execute(EntityManager em, String sql, Instant watermark) {
+        Query query = em.createNativeQuery(sql).setParameter("watermark", watermark);
+        // TRANSFER is not cached, naming the tables keeps the Drug and Category cache regions
+        query.unwrap(NativeQuery.class).addSynchronizedQuerySpace("TRANSFER").addSynchronizedQuerySpace("TRANSFER_ARCHIVE");
+        return query.executeUpdate();
+    }
+}
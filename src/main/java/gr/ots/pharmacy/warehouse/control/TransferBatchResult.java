@@ -0,0 +1,14 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.entity.Transfer;
+
+public record TransferBatchResult(int line, Long transferId, String error) {
+
+    static TransferBatchResult created(int line, Transfer transfer) {
+        return new TransferBatchResult(line, transfer.id, null);
+    }
+
+    static TransferBatchResult rejected(int line, String error) {
+        return new TransferBatchResult(line, null, error);
+    }
+}
@@ -0,0 +1,6 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.entity.Transfer;
+
+public record TransferCreated(Transfer transfer) {
+}
@@ -0,0 +1,133 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Change feed of committed transfers. Every transfer gets the next sequence number and is kept in a ring of the
+// last replay-size entries, so a client that reconnects with the last sequence it saw gets what it missed. Each
+// subscription buffers at most client-buffer entries, a client that falls further behind is dropped instead of
+// holding memory or slowing down the transactions that publish.
+@ApplicationScoped
+public class TransferFeed {
+
+    // in a subscription queue, the subscription was dropped because it could not keep up
+    public static final Entry OVERFLOW = new Entry(0, null);
+
+    public record Entry(long sequence, TransferView transfer) {
+    }
+
+    @ConfigProperty(name = "warehouse.feed.replay-size", defaultValue = "10000")
+    private int replaySize;
+
+    @ConfigProperty(name = "warehouse.feed.client-buffer", defaultValue = "1000")
+    private int clientBuffer;
+
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    private Entry[] ring;
+
+    // sequence of the next entry, the feed starts at 1
+    private long next = 1;
+
+    @PostConstruct
+    void init() {
+        ring = new Entry[replaySize];
+    }
+
+    public final class Subscription implements AutoCloseable {
+
+        private final Set<Long> drugIds;
+
+        private final BlockingQueue<Entry> queue;
+
+        private final boolean reset;
+
+        private Subscription(Set<Long> drugIds, int capacity, boolean reset) {
+            this.drugIds = drugIds;
+            this.queue = new LinkedBlockingQueue<>(capacity);
+            this.reset = reset;
+        }
+
+        // the requested sequence is no longer (or not yet) in the ring, the client has to reload its state
+        public boolean isReset() {
+            return reset;
+        }
+
+        // null when nothing was published within the timeout
+        public Entry poll(long timeout, TimeUnit unit) throws InterruptedException {
+            return queue.poll(timeout, unit);
+        }
+
+        private boolean accepts(Entry entry) {
+            return drugIds.isEmpty() || drugIds.contains(entry.transfer().drugId());
+        }
+
+        private boolean offer(Entry entry) {
+            if (queue.offer(entry)) {
+                return true;
+            }
+            // the consumer still gets the marker, whatever it has not read yet is lost anyway
+            queue.clear();
+            queue.offer(OVERFLOW);
+            return false;
+        }
+
+        @Override
+        public void close() {
+            subscriptions.remove(this);
+        }
+    }
+
+    // registration and replay happen under the publishing lock, so the live entries continue exactly after the replay
+    public synchronized Subscription subscribe(Long lastSequence, Collection<Long> drugIds) {
+        Set<Long> filter = drugIds == null ? Set.of() : Set.copyOf(drugIds);
+        long oldest = Math.max(1, next - replaySize);
+
+        List<Entry> replay = new ArrayList<>();
+        boolean reset = lastSequence != null && (lastSequence < oldest - 1 || lastSequence >= next);
+        if (lastSequence != null && !reset) {
+            for (long sequence = lastSequence + 1; sequence < next; sequence++) {
+                replay.add(ring[slot(sequence)]);
+            }
+        }
+
+        Subscription subscription = new Subscription(filter, clientBuffer + replay.size(), reset);
+        replay.stream().filter(subscription::accepts).forEach(subscription.queue::offer);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public int subscribers() {
+        return subscriptions.size();
+    }
+
+    void afterTransferCreated(@Observes(during = TransactionPhase.AFTER_SUCCESS) TransferCreated event) {
+        publish(TransferView.of(event.transfer()));
+    }
+
+    // runs on the committing thread, so it never blocks: a full subscription is dropped
+    synchronized long publish(TransferView transfer) {
+        Entry entry = new Entry(next, transfer);
+        ring[slot(next)] = entry;
+        next++;
+
+        subscriptions.removeIf(subscription -> subscription.accepts(entry) && !subscription.offer(entry));
+        return entry.sequence();
+    }
+
+    private int slot(long sequence) {
+        return (int) ((sequence - 1) % replaySize);
+    }
+}
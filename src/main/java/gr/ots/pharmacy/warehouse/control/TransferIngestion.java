@@ -0,0 +1,204 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.boundary.TransferCreateDTO;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Write-behind ingestion: accepted transfers wait in one bounded queue per drug shard and a single writer per shard
+// drains whatever has accumulated into one createTransfers call, so consecutive movements share one transaction and
+// one stock update per drug. A full queue is reported to the caller instead of blocking it. On shutdown new
+// submissions are refused first and the writers get warehouse.ingestion.drain-timeout to write what was accepted.
+@ApplicationScoped
+public class TransferIngestion {
+
+    private static final Logger LOG = Logger.getLogger(TransferIngestion.class);
+
+    // how long an idle writer waits before it checks whether the ingestion is stopping
+    private static final long POLL_MILLIS = 100;
+
+    private record Pending(String trackingId, TransferCreateDTO transfer) {
+    }
+
+    @ConfigProperty(name = "warehouse.ingestion.enabled", defaultValue = "false")
+    private boolean enabled;
+
+    @ConfigProperty(name = "warehouse.ingestion.shards", defaultValue = "4")
+    private int shards;
+
+    @ConfigProperty(name = "warehouse.ingestion.queue-capacity", defaultValue = "10000")
+    private int queueCapacity;
+
+    @ConfigProperty(name = "warehouse.ingestion.max-batch", defaultValue = "500")
+    private int maxBatch;
+
+    @ConfigProperty(name = "warehouse.ingestion.max-statuses", defaultValue = "100000")
+    private int maxStatuses;
+
+    @ConfigProperty(name = "warehouse.ingestion.drain-timeout", defaultValue = "10s")
+    private Duration drainTimeout;
+
+    @Inject
+    private WarehouseService warehouseService;
+
+    // submissions hold the read lock from the check to the offer, so nothing is queued once stop() took the write lock
+    private final ReadWriteLock accepting = new ReentrantReadWriteLock();
+
+    private volatile boolean stopping;
+
+    private final Map<String, IngestionStatus> statuses = new ConcurrentHashMap<>();
+
+    // completed tracking ids in completion order, the oldest are forgotten first
+    private final Queue<String> completed = new ConcurrentLinkedQueue<>();
+
+    private List<BlockingQueue<Pending>> queues = List.of();
+
+    private List<Thread> writers = List.of();
+
+    void start(@Observes StartupEvent event) {
+        if (!enabled) {
+            return;
+        }
+        queues = new ArrayList<>(shards);
+        writers = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(queueCapacity);
+            queues.add(queue);
+            writers.add(Thread.ofPlatform().name("transfer-writer-" + shard).daemon().start(() -> drain(queue)));
+        }
+    }
+
+    void stop(@Observes ShutdownEvent event) throws InterruptedException {
+        accepting.writeLock().lock();
+        try {
+            stopping = true;
+        } finally {
+            accepting.writeLock().unlock();
+        }
+
+        long deadline = System.nanoTime() + drainTimeout.toNanos();
+        for (Thread writer : writers) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0) {
+                writer.join(Duration.ofNanos(remaining));
+            }
+            writer.interrupt();
+        }
+        int unwritten = queues.stream().mapToInt(BlockingQueue::size).sum();
+        if (unwritten > 0) {
+            LOG.warnf("%d accepted transfers were not written within %s of shutdown", unwritten, drainTimeout);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // null when the shard of this drug is full, the caller should retry later
+    public IngestionStatus submit(TransferCreateDTO transfer) {
+        if (!enabled) {
+            throw WarehouseError.INGESTION_DISABLED.exception();
+        }
+        if (transfer == null) {
+            throw WarehouseError.BODY_REQUIRED.exception();
+        }
+
+        accepting.readLock().lock();
+        try {
+            if (stopping) {
+                throw WarehouseError.INGESTION_STOPPED.exception();
+            }
+            IngestionStatus status = IngestionStatus.queued(UUID.randomUUID().toString());
+            statuses.put(status.trackingId(), status);
+            if (!queues.get(Math.floorMod(transfer.drugId(), shards)).offer(new Pending(status.trackingId(), transfer))) {
+                statuses.remove(status.trackingId());
+                return null;
+            }
+            return status;
+        } finally {
+            accepting.readLock().unlock();
+        }
+    }
+
+    public IngestionStatus status(String trackingId) {
+        return statuses.get(trackingId);
+    }
+
+    // runs until the queue is empty after stop(), or until interrupted when draining took too long
+    private void drain(BlockingQueue<Pending> queue) {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (!Thread.currentThread().isInterrupted()) {
+            Pending first;
+            try {
+                first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (first == null) {
+                if (stopping) {
+                    return;
+                }
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, maxBatch - 1);
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<Pending> batch) {
+        List<TransferBatchResult> results;
+        try {
+            results = warehouseService.createTransfers(batch.stream().map(Pending::transfer).toList());
+        } catch (RuntimeException e) {
+            // the whole batch was rolled back, each line is written again on its own so only the failing ones are rejected
+            LOG.warnf(e, "Writing %d queued transfers failed, retrying them one by one", batch.size());
+            results = new ArrayList<>(batch.size());
+            for (int line = 0; line < batch.size(); line++) {
+                results.add(writeOne(line, batch.get(line).transfer()));
+            }
+        }
+
+        for (int line = 0; line < batch.size(); line++) {
+            String trackingId = batch.get(line).trackingId();
+            statuses.put(trackingId, IngestionStatus.of(trackingId, results.get(line)));
+            completed.add(trackingId);
+        }
+        while (statuses.size() > maxStatuses) {
+            String oldest = completed.poll();
+            if (oldest == null) {
+                break;
+            }
+            statuses.remove(oldest);
+        }
+    }
+
+    private TransferBatchResult writeOne(int line, TransferCreateDTO transfer) {
+        try {
+            TransferBatchResult result = warehouseService.createTransfers(List.of(transfer)).getFirst();
+            return new TransferBatchResult(line, result.transferId(), result.error());
+        } catch (RuntimeException e) {
+            return TransferBatchResult.rejected(line, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+// Rejected transfers by reason, the counters are registered once so the hot path only increments
+@ApplicationScoped
+public class TransferMetrics {
+
+    private static final String REJECTIONS = "warehouse.transfer.rejections";
+
+    @Inject
+    private MeterRegistry registry;
+
+    private Counter insufficientStock;
+
+    private Counter drugNotFound;
+
+    private Counter invalidLine;
+
+    @PostConstruct
+    void register() {
+        insufficientStock = rejections("insufficient_stock");
+        drugNotFound = rejections("drug_not_found");
+        invalidLine = rejections("invalid_line");
+    }
+
+    public void insufficientStock() {
+        insufficientStock.increment();
+    }
+
+    public void drugNotFound() {
+        drugNotFound.increment();
+    }
+
+    public void invalidLine() {
+        invalidLine.increment();
+    }
+
+    private Counter rejections(String reason) {
+        return Counter.builder(REJECTIONS)
+                .description("Transfers rejected by the warehouse service")
+                .tag("reason", reason)
+                .register(registry);
+    }
+}
@@ -0,0 +1,9 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.entity.TransferType;
+
+import java.time.LocalDate;
+
+// period is the first day of the day/week/month bucket
+public record TransferSummary(long drugId, LocalDate period, TransferType type, long quantity, long transfers) {
+}
@@ -0,0 +1,16 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.entity.Transfer;
+import gr.ots.pharmacy.warehouse.entity.TransferType;
+
+import java.time.Instant;
+
+// Flat read model of a transfer, carries only the drug reference instead of the whole Drug/Category graph
+public record TransferView(Long id, TransferType type, int quantity, Instant transferDate, Instant createdAt,
+                           Long drugId, String drugCode, String drugName) {
+
+    public static TransferView of(Transfer transfer) {
+        return new TransferView(transfer.id, transfer.getType(), transfer.getQuantity(), transfer.getTransferDate(), transfer.getCreatedAt(),
+                transfer.getDrug().id, transfer.getDrug().getCode(), transfer.getDrug().getName());
+    }
+}
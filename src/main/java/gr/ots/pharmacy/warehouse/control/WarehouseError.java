@@ -0,0 +1,49 @@
+package gr.ots.pharmacy.warehouse.control;
+
+// Every expected rejection of a request, the message is what the client gets back with the HTTP status (400 unless
+// the request itself was fine)
+public enum WarehouseError {
+
+    DRUG_NOT_FOUND("Drug not found"),
+    INSUFFICIENT_STOCK("Insufficient stock"),
+    IDEMPOTENCY_KEY_REUSED("Idempotency-Key was already used for a different transfer"),
+    INVALID_CURSOR("Invalid cursor"),
+    INVALID_RANGE("from must not be after to"),
+    INVALID_LAST_EVENT_ID("Invalid Last-Event-ID"),
+    BODY_REQUIRED("Request body is required"),
+    UNSUPPORTED_EXPORT_FORMAT("Unsupported export format"),
+    UNSUPPORTED_TRANSFER_VIEW("Unsupported transfer view"),
+    UNSUPPORTED_SUMMARY_GRANULARITY("Unsupported summary granularity"),
+    CHECKPOINT_BEFORE_WATERMARK("Checkpoint must not be before the archive watermark"),
+    INGESTION_DISABLED("Asynchronous ingestion is disabled", 404),
+    INGESTION_STOPPED("Asynchronous ingestion is shutting down", 503);
+
+    private final String message;
+
+    private final int status;
+
+    private final WarehouseException exception;
+
+    WarehouseError(String message) {
+        this(message, 400);
+    }
+
+    WarehouseError(String message, int status) {
+        this.message = message;
+        this.status = status;
+        this.exception = new WarehouseException(this);
+    }
+
+    public String message() {
+        return message;
+    }
+
+    public int status() {
+        return status;
+    }
+
+    // preallocated, throwing a rejection allocates nothing
+    public WarehouseException exception() {
+        return exception;
+    }
+}
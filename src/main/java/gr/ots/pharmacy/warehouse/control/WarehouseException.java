@@ -0,0 +1,23 @@
+package gr.ots.pharmacy.warehouse.control;
+
+// A business rejection, not a bug, so it skips the stack trace that makes up most of the cost of throwing. There is one
+// instance per WarehouseError, shared by every throw: the cause is fixed to null so that no caller can attach one, and
+// it must not be thrown out of a try-with-resources whose close can fail, the suppressed exception would stay on it.
+public class WarehouseException extends IllegalArgumentException {
+
+    private final WarehouseError error;
+
+    WarehouseException(WarehouseError error) {
+        super(error.message(), null);
+        this.error = error;
+    }
+
+    public WarehouseError error() {
+        return error;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
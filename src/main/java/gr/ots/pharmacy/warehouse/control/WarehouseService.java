@@ -2,30 +2,73 @@ package gr.ots.pharmacy.warehouse.control;
 
 
 import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import gr.ots.pharmacy.warehouse.boundary.TransferCreateDTO;
 import gr.ots.pharmacy.warehouse.entity.Drug;
 import gr.ots.pharmacy.warehouse.entity.Transfer;
 import gr.ots.pharmacy.warehouse.entity.TransferType;
+import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import jakarta.validation.constraints.Size;
 
 import java.time.Instant;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface WarehouseService {
 
+    int MAX_BATCH_SIZE = 5000;
+
     // Τη δημιουργία νέων φαρμάκων
     Drug createDrug(DrugCreateDTO drugCreateDTO);
 
     // Την προβολή όλων των φαρμάκων της αποθήκης
     List<Drug> getAllDrugs();
 
+    // Η εξαγωγή όλων των φαρμάκων ένα-ένα, χωρίς να φορτώνεται ολόκληρος ο κατάλογος στη μνήμη
+    void exportDrugs(Consumer<Drug> consumer);
+
     // Την προβολή όλων των φαρμάκων της αποθήκης με pagination
     PagedResult<Drug> getAllDrugs(int page, int limit);
 
+    // Η προβολή των φαρμάκων είτε με page/limit είτε με cursor (keyset pagination)
+    PagedResult<Drug> getAllDrugs(PageRequest pageRequest);
+
+    // Ορισμός του ορίου αναπαραγγελίας ενός φαρμάκου, κάτω από το οποίο θεωρείται ότι έχει χαμηλό απόθεμα
+    Drug setReorderLevel(@Positive long drugId, @PositiveOrZero int reorderLevel);
+
+    // Τα φάρμακα με απόθεμα κάτω από το όριο αναπαραγγελίας, είτε με page/limit είτε με cursor
+    PagedResult<Drug> getLowStockDrugs(PageRequest pageRequest);
+
+    // Αναζήτηση φαρμάκων με πρόθεμα κωδικού ή λέξεις του ονόματος (χωρίς τόνους/πεζά-κεφαλαία), με κατάταξη και pagination
+    PagedResult<Drug> searchDrugs(@NotBlank String query, PageRequest pageRequest);
+
     // Τη δημιουργία κινήσεων στην αποθήκη (εισαγωγή/εξαγωγή) και ενημέρωση των αποθεμάτων
     Transfer createTransfer(@NotNull TransferType type, @Positive int drugId, @Positive int quantity);
 
+    // Όπως παραπάνω, αλλά μια επανάληψη με το ίδιο Idempotency-Key επιστρέφει την αρχική κίνηση χωρίς νέα ενημέρωση αποθέματος.
+    // Εκτελείται σε δικές της σύντομες συναλλαγές, εκτός της συναλλαγής του καλούντος
+    Transfer createTransfer(@NotNull TransferType type, @Positive int drugId, @Positive int quantity, @Size(max = 64) String idempotencyKey);
+
+    // Μαζική δημιουργία κινήσεων σε μία συναλλαγή, με αποτέλεσμα ανά γραμμή
+    List<TransferBatchResult> createTransfers(@NotNull @Size(max = MAX_BATCH_SIZE) List<TransferCreateDTO> transfers);
+
     // Την προβολή των κινήσεων εξαγωγής της αποθήκης για συγκεκριμένα φάρμακα και συγκεκριμένο εύρος ημερομηνιών.
     PagedResult<Transfer> getTransfers(int page, int limit, List<Long> drugIds, Instant from, Instant to);
 
+    // Όπως παραπάνω, είτε με page/limit είτε με cursor (keyset pagination)
+    PagedResult<Transfer> getTransfers(PageRequest pageRequest, List<Long> drugIds, Instant from, Instant to);
+
+    // Όπως παραπάνω, αλλά με ελαφριά προβολή (TransferView) αντί για ολόκληρα entities, με ένα μόνο query
+    PagedResult<TransferView> getTransferViews(PageRequest pageRequest, List<Long> drugIds, Instant from, Instant to);
+
+    // Το απόθεμα ενός φαρμάκου σε μια χρονική στιγμή, από το πλησιέστερο ημερήσιο snapshot και τις κινήσεις από τότε
+    StockLevel getStockAt(@Positive long drugId, @NotNull Instant at);
+
+    // Σύνοψη των κινήσεων ανά φάρμακο, τύπο και ημέρα/εβδομάδα/μήνα από τον προϋπολογισμένο πίνακα ημερήσιων συνόλων
+    List<TransferSummary> getTransferSummary(List<Long> drugIds, @NotNull LocalDate from, @NotNull LocalDate to,
+                                             @NotNull SummaryGranularity granularity);
+
 }
@@ -0,0 +1,90 @@
+package gr.ots.pharmacy.warehouse.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+
+import java.time.Instant;
+
+// Read-only view of TRANSFER_ARCHIVE, rows are moved there by SQL from TRANSFER and keep their ids
+@Entity
+@Immutable
+@Table(name = "TRANSFER_ARCHIVE")
+public class ArchivedTransfer {
+
+    @Id
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    private TransferType type;
+
+    @ManyToOne
+    @JoinColumn(name = "DRUG_ID")
+    private Drug drug;
+
+    private int quantity;
+
+    @Column(name = "TRANSFER_DATE")
+    private Instant transferDate;
+
+    @Column(name = "CREATED_AT")
+    private Instant createdAt;
+
+    @Column(name = "UPDATED_AT")
+    private Instant updatedAt;
+
+    private long version;
+
+    @Column(name = "IDEMPOTENCY_KEY")
+    private String idempotencyKey;
+
+    public Long getId() {
+        return id;
+    }
+
+    public TransferType getType() {
+        return type;
+    }
+
+    public Drug getDrug() {
+        return drug;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public Instant getTransferDate() {
+        return transferDate;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    // detached copy for listings that return Transfer, it is never persisted
+    public Transfer toTransfer() {
+        Transfer transfer = new Transfer();
+        transfer.id = id;
+        transfer.setType(type);
+        transfer.setDrug(drug);
+        transfer.setQuantity(quantity);
+        transfer.setTransferDate(transferDate);
+        transfer.setCreatedAt(createdAt);
+        transfer.setUpdatedAt(updatedAt);
+        transfer.setVersion(version);
+        transfer.setIdempotencyKey(idempotencyKey);
+        return transfer;
+    }
+}
@@ -1,10 +1,12 @@
 package gr.ots.pharmacy.warehouse.entity;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Entity;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 
 @Entity
+@Cacheable
 public class Category extends BaseEntity {
 
     @NotBlank
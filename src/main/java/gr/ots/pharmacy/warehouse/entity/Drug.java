@@ -1,6 +1,7 @@
 package gr.ots.pharmacy.warehouse.entity;
 
 import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.JoinColumn;
@@ -14,6 +15,7 @@ import jakarta.ws.rs.NotFoundException;
 import java.math.BigDecimal;
 
 @Entity
+@Cacheable
 public class Drug extends BaseEntity {
 
     @NotBlank
@@ -32,6 +34,15 @@ public class Drug extends BaseEntity {
     @PositiveOrZero
     private int stock;
 
+    // the drug is low on stock while stock is below it, 0 turns the alert off
+    @PositiveOrZero
+    @Column(name = "REORDER_LEVEL")
+    private int reorderLevel;
+
+    // kept in step with stock and reorderLevel by the setters, so the low-stock listing is an index range
+    @Column(name = "LOW_STOCK")
+    private boolean lowStock;
+
     @NotNull
     @ManyToOne
     @JoinColumn(name = "category_id")
@@ -41,11 +52,18 @@ public class Drug extends BaseEntity {
     }
 
     public Drug(DrugCreateDTO drugCreateDTO) {
+        this(drugCreateDTO, Category.findById(drugCreateDTO.categoryId()));
+    }
+
+    // for callers that already resolved the category, e.g. once for a whole import chunk
+    public Drug(DrugCreateDTO drugCreateDTO, Category category) {
         this.name = drugCreateDTO.name();
         this.code = drugCreateDTO.code();
         this.price = drugCreateDTO.price();
         this.stock = drugCreateDTO.stock();
-        this.category = Category.findById(drugCreateDTO.categoryId());
+        this.reorderLevel = drugCreateDTO.reorderLevel();
+        this.lowStock = stock < reorderLevel;
+        this.category = category;
         if (this.category == null) {
             throw new NotFoundException("Category not found");
         }
@@ -81,6 +99,20 @@ public class Drug extends BaseEntity {
 
     public void setStock(int stock) {
         this.stock = stock;
+        this.lowStock = stock < reorderLevel;
+    }
+
+    public int getReorderLevel() {
+        return reorderLevel;
+    }
+
+    public void setReorderLevel(int reorderLevel) {
+        this.reorderLevel = reorderLevel;
+        this.lowStock = stock < reorderLevel;
+    }
+
+    public boolean isLowStock() {
+        return lowStock;
     }
 
     public Category getCategory() {
@@ -3,6 +3,7 @@ package gr.ots.pharmacy.warehouse.entity;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.PositiveOrZero;
+import jakarta.validation.constraints.Size;
 
 import java.time.Instant;
 
@@ -25,6 +26,10 @@ public class Transfer extends BaseEntity {
     @Column(name = "TRANSFER_DATE")
     private Instant transferDate;
 
+    @Size(max = 64)
+    @Column(name = "IDEMPOTENCY_KEY", unique = true)
+    private String idempotencyKey;
+
     public TransferType getType() {
         return type;
     }
@@ -56,4 +61,12 @@ public class Transfer extends BaseEntity {
     public void setTransferDate(Instant transferDate) {
         this.transferDate = transferDate;
     }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
 }
@@ -0,0 +1,53 @@
+package gr.ots.pharmacy.warehouse.entity;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+// A transfer waiting to be exported, inserted by the transaction that creates the transfer. No TRANSFER foreign key,
+// the row must outlive the transfer being archived.
+@Entity
+@Table(name = "TRANSFER_OUTBOX")
+public class TransferOutbox extends PanacheEntityBase {
+
+    @Id
+    @SequenceGenerator(name = "TRANSFER_OUTBOX_SEQ", sequenceName = "TRANSFER_OUTBOX_SEQ", allocationSize = 50)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "TRANSFER_OUTBOX_SEQ")
+    private Long id;
+
+    @Column(name = "TRANSFER_ID", nullable = false, updatable = false)
+    private long transferId;
+
+    // unbounded VARCHAR, JSON escaping can make it longer than the drug columns it is built from
+    @Column(nullable = false, updatable = false)
+    private String payload;
+
+    @Column(name = "CREATED_AT", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    public TransferOutbox() {
+    }
+
+    public TransferOutbox(long transferId, String payload) {
+        this.transferId = transferId;
+        this.payload = payload;
+        this.createdAt = TruncateUtil.truncate(Instant.now());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public long getTransferId() {
+        return transferId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,2 @@
+CREATE INDEX DRUG_CREATED_AT_ID_IDX ON DRUG (CREATED_AT DESC, ID DESC);
+CREATE INDEX TRANSFER_CREATED_AT_ID_IDX ON TRANSFER (CREATED_AT DESC, ID DESC);
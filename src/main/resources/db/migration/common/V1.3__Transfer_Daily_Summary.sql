@@ -0,0 +1,17 @@
+CREATE TABLE TRANSFER_DAILY_SUMMARY
+(
+    DRUG_ID        INT8       NOT NULL,
+    SUMMARY_DAY    DATE       NOT NULL,
+    TYPE           VARCHAR(3) NOT NULL,
+    QUANTITY       INT8       NOT NULL,
+    TRANSFER_COUNT INT8       NOT NULL,
+    PRIMARY KEY (DRUG_ID, SUMMARY_DAY, TYPE),
+    CONSTRAINT summary_fk_drug_id FOREIGN KEY (DRUG_ID) REFERENCES DRUG (ID)
+);
+
+CREATE INDEX TRANSFER_DAILY_SUMMARY_DAY_IDX ON TRANSFER_DAILY_SUMMARY (SUMMARY_DAY);
+
+INSERT INTO TRANSFER_DAILY_SUMMARY (DRUG_ID, SUMMARY_DAY, TYPE, QUANTITY, TRANSFER_COUNT)
+SELECT DRUG_ID, CAST(TRANSFER_DATE AS DATE), CAST(TYPE AS VARCHAR(3)), SUM(QUANTITY), COUNT(*)
+FROM TRANSFER
+GROUP BY DRUG_ID, CAST(TRANSFER_DATE AS DATE), CAST(TYPE AS VARCHAR(3));
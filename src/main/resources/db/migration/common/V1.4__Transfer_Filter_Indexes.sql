@@ -0,0 +1,2 @@
+CREATE INDEX TRANSFER_DRUG_ID_TRANSFER_DATE_IDX ON TRANSFER (DRUG_ID, TRANSFER_DATE, CREATED_AT DESC, ID DESC);
+CREATE INDEX TRANSFER_TRANSFER_DATE_IDX ON TRANSFER (TRANSFER_DATE, CREATED_AT DESC, ID DESC);
@@ -0,0 +1,3 @@
+ALTER TABLE TRANSFER ADD COLUMN IDEMPOTENCY_KEY VARCHAR(64);
+
+CREATE UNIQUE INDEX TRANSFER_IDEMPOTENCY_KEY_IDX ON TRANSFER (IDEMPOTENCY_KEY);
@@ -0,0 +1,8 @@
+CREATE TABLE DRUG_STOCK_SNAPSHOT
+(
+    DRUG_ID     INT8                     NOT NULL,
+    SNAPSHOT_AT TIMESTAMP WITH TIME ZONE NOT NULL,
+    STOCK       INTEGER                  NOT NULL,
+    PRIMARY KEY (DRUG_ID, SNAPSHOT_AT),
+    CONSTRAINT snapshot_fk_drug_id FOREIGN KEY (DRUG_ID) REFERENCES DRUG (ID)
+);
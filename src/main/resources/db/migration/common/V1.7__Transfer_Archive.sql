@@ -0,0 +1,30 @@
+CREATE TABLE TRANSFER_ARCHIVE
+(
+    ID              INT8                     NOT NULL,
+    TYPE            VARCHAR(3)               NOT NULL CHECK (TYPE IN ('IN', 'OUT')),
+    DRUG_ID         INT8                     NOT NULL,
+    QUANTITY        INTEGER                  NOT NULL,
+    TRANSFER_DATE   TIMESTAMP WITH TIME ZONE NOT NULL,
+    CREATED_AT      TIMESTAMP WITH TIME ZONE NOT NULL,
+    UPDATED_AT      TIMESTAMP WITH TIME ZONE,
+    VERSION         INT8                     NOT NULL,
+    IDEMPOTENCY_KEY VARCHAR(64),
+    PRIMARY KEY (ID),
+    CONSTRAINT archive_fk_drug_id FOREIGN KEY (DRUG_ID) REFERENCES DRUG (ID)
+);
+
+CREATE INDEX TRANSFER_ARCHIVE_CREATED_AT_ID_IDX ON TRANSFER_ARCHIVE (CREATED_AT DESC, ID DESC);
+CREATE INDEX TRANSFER_ARCHIVE_DRUG_ID_TRANSFER_DATE_IDX ON TRANSFER_ARCHIVE (DRUG_ID, TRANSFER_DATE, CREATED_AT DESC, ID DESC);
+CREATE INDEX TRANSFER_ARCHIVE_TRANSFER_DATE_IDX ON TRANSFER_ARCHIVE (TRANSFER_DATE, CREATED_AT DESC, ID DESC);
+-- an Idempotency-Key stays unique once its transfer is archived, TRANSFER and TRANSFER_ARCHIVE never hold the same one
+CREATE UNIQUE INDEX TRANSFER_ARCHIVE_IDEMPOTENCY_KEY_IDX ON TRANSFER_ARCHIVE (IDEMPOTENCY_KEY);
+
+-- every transfer with TRANSFER_DATE < WATERMARK is in TRANSFER_ARCHIVE, every other one in TRANSFER
+CREATE TABLE TRANSFER_ARCHIVE_STATE
+(
+    ID        INTEGER                  NOT NULL,
+    WATERMARK TIMESTAMP WITH TIME ZONE,
+    PRIMARY KEY (ID)
+);
+
+INSERT INTO TRANSFER_ARCHIVE_STATE VALUES (1, NULL);
@@ -0,0 +1,5 @@
+ALTER TABLE DRUG ADD COLUMN REORDER_LEVEL INTEGER DEFAULT 0 NOT NULL;
+ALTER TABLE DRUG ADD COLUMN LOW_STOCK BOOLEAN DEFAULT FALSE NOT NULL;
+
+-- the low-stock listing reads only the flagged drugs in keyset order
+CREATE INDEX DRUG_LOW_STOCK_IDX ON DRUG (LOW_STOCK, CREATED_AT DESC, ID DESC);
@@ -0,0 +1,12 @@
+CREATE SEQUENCE TRANSFER_OUTBOX_SEQ START WITH 1 INCREMENT BY 50;
+
+-- committed transfers not yet delivered to the accounting sink, a row is deleted once its delivery succeeded. The
+-- payload is the JSON of a TransferView, unbounded since escaping can make it longer than the drug columns it is built from
+CREATE TABLE TRANSFER_OUTBOX
+(
+    ID          INT8                     NOT NULL,
+    TRANSFER_ID INT8                     NOT NULL,
+    PAYLOAD     VARCHAR                  NOT NULL,
+    CREATED_AT  TIMESTAMP WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (ID)
+);
@@ -0,0 +1,142 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import gr.ots.pharmacy.warehouse.boundary.TransferCreateDTO;
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import gr.ots.pharmacy.warehouse.entity.Transfer;
+import gr.ots.pharmacy.warehouse.entity.TransferType;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+@TestProfile(PostgresWarehouseServiceTest.PostgresProfile.class)
+class PostgresWarehouseServiceTest {
+
+    public static class PostgresProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("quarkus.datasource.db-kind", "postgresql",
+                    "quarkus.datasource.devservices.enabled", "false",
+                    "quarkus.flyway.locations", "db/migration/common,db/migration/postgresql");
+        }
+
+        @Override
+        public List<TestResourceEntry> testResources() {
+            return List.of(new TestResourceEntry(EmbeddedPostgresResource.class));
+        }
+    }
+
+    @Inject
+    WarehouseService warehouseService;
+
+    @Inject
+    StockSnapshots stockSnapshots;
+
+    @Inject
+    TransferArchive transferArchive;
+
+    @Inject
+    Flyway flyway;
+
+    @Inject
+    CountCache countCache;
+
+    @Inject
+    CatalogueCache catalogueCache;
+
+    @BeforeEach
+    void clean() {
+        flyway.clean();
+        flyway.migrate();
+        countCache.invalidate();
+        catalogueCache.evictAll();
+    }
+
+    @Test
+    void testCreateDrugAndTransfers() {
+        Drug drug = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 100, 42));
+        Transfer transfer = warehouseService.createTransfer(TransferType.OUT, drug.id.intValue(), 30);
+        assertEquals(TransferType.OUT, transfer.getType());
+        assertEquals(70, Drug.<Drug>findById(drug.id).getStock());
+
+        // the CHECK constraint replaces the H2 ENUM column, both types still round-trip
+        warehouseService.createTransfer(TransferType.IN, drug.id.intValue(), 5);
+        assertEquals(75, Drug.<Drug>findById(drug.id).getStock());
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> warehouseService.createTransfer(TransferType.OUT, drug.id.intValue(), 1000));
+        assertEquals("Insufficient stock", exception.getMessage());
+    }
+
+    @Test
+    void testDuplicateDrugCodeIsAnIntegrityViolation() {
+        warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 100, 42));
+        Exception exception = assertThrows(Exception.class,
+                () -> warehouseService.createDrug(new DrugCreateDTO("Other Drug", "TEST001", new BigDecimal("1.00"), 1, 42)));
+        boolean translated = false;
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            translated |= cause instanceof org.hibernate.exception.ConstraintViolationException;
+        }
+        assertTrue(translated);
+    }
+
+    @Test
+    void testBatchListingsAndSummary() {
+        long drugId = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 100, 42)).id;
+
+        List<TransferBatchResult> results = warehouseService.createTransfers(List.of(
+                new TransferCreateDTO(TransferType.OUT, (int) drugId, 10),
+                new TransferCreateDTO(TransferType.OUT, (int) drugId, 1000),
+                new TransferCreateDTO(TransferType.IN, (int) drugId, 4)));
+        assertNotNull(results.get(0).transferId());
+        assertNotNull(results.get(1).error());
+        assertNotNull(results.get(2).transferId());
+
+        PagedResult<Transfer> page = warehouseService.getTransfers(PageRequest.of(1, 1), List.of(drugId), null, null);
+        assertEquals(2L, page.totalItems());
+        assertTrue(page.hasNext());
+        assertEquals(TransferType.IN, page.items().getFirst().getType());
+
+        PagedResult<Transfer> next = warehouseService.getTransfers(new PageRequest(1, 1, page.nextCursor()), List.of(drugId), null, null);
+        assertEquals(TransferType.OUT, next.items().getFirst().getType());
+
+        // the daily rollup is written with an upsert, its days are calendar days in warehouse.rollup.zone (UTC)
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        List<TransferSummary> summary = warehouseService.getTransferSummary(List.of(drugId), today, today, SummaryGranularity.DAY);
+        assertEquals(2, summary.size());
+        assertEquals(14, summary.stream().mapToLong(TransferSummary::quantity).sum());
+    }
+
+    @Test
+    void testCheckpointAndArchive() {
+        long drugId = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 100, 42)).id;
+        warehouseService.createTransfer(TransferType.OUT, (int) drugId, 10);
+
+        Instant checkpoint = Instant.now().plus(1, ChronoUnit.SECONDS);
+        assertEquals(1, stockSnapshots.checkpoint(checkpoint));
+        StockLevel level = warehouseService.getStockAt(drugId, checkpoint);
+        assertEquals(90, level.stock());
+        assertEquals(checkpoint.truncatedTo(ChronoUnit.MICROS), level.snapshotAt());
+
+        // everything moves to TRANSFER_ARCHIVE and the listings still find it
+        assertEquals(1, transferArchive.archive(Instant.now().plus(1, ChronoUnit.DAYS)));
+        PagedResult<Transfer> page = warehouseService.getTransfers(PageRequest.of(1, 10), List.of(drugId), null, null);
+        assertEquals(1L, page.totalItems());
+        assertEquals(10, page.items().getFirst().getQuantity());
+    }
+}
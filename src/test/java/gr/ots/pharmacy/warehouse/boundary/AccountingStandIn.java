@@ -0,0 +1,51 @@
+package gr.ots.pharmacy.warehouse.boundary;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.core.Response;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Local stand-in for the accounting system the HTTP outbox sink posts to
+@Path("accounting/transfers")
+@ApplicationScoped
+public class AccountingStandIn {
+
+    private final List<String> received = new CopyOnWriteArrayList<>();
+
+    private volatile int requests;
+
+    private volatile boolean unavailable;
+
+    @POST
+    @Consumes(WarehouseResource.APPLICATION_NDJSON)
+    public Response receive(String body) {
+        if (unavailable) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+        }
+        requests++;
+        body.lines().filter(line -> !line.isBlank()).forEach(received::add);
+        return Response.noContent().build();
+    }
+
+    public List<String> received() {
+        return received;
+    }
+
+    public int requests() {
+        return requests;
+    }
+
+    public void setUnavailable(boolean unavailable) {
+        this.unavailable = unavailable;
+    }
+
+    public void reset() {
+        received.clear();
+        requests = 0;
+        unavailable = false;
+    }
+}
@@ -1,20 +1,41 @@
 package gr.ots.pharmacy.warehouse.boundary;
 
+import gr.ots.pharmacy.warehouse.control.CatalogueCache;
+import gr.ots.pharmacy.warehouse.control.CountCache;
+import gr.ots.pharmacy.warehouse.control.DrugSearchIndex;
+import gr.ots.pharmacy.warehouse.control.TransferFeed;
 import gr.ots.pharmacy.warehouse.entity.TransferType;
 import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.RestAssured;
 import io.restassured.http.ContentType;
+import io.restassured.path.json.JsonPath;
 import jakarta.inject.Inject;
 import org.flywaydb.core.Flyway;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @QuarkusTest
 class WarehouseResourceTest {
@@ -22,10 +43,28 @@ class WarehouseResourceTest {
     @Inject
     Flyway flyway;
 
+    @Inject
+    CountCache countCache;
+
+    @Inject
+    CatalogueCache catalogueCache;
+
+    @Inject
+    DrugSearchIndex drugSearchIndex;
+
+    @Inject
+    LowStockStream lowStockStream;
+
+    @Inject
+    TransferFeed transferFeed;
+
     @BeforeEach
     void clean() {
         flyway.clean();
         flyway.migrate();
+        countCache.invalidate();
+        catalogueCache.evictAll();
+        drugSearchIndex.reload();
     }
 
     @Test
@@ -93,6 +132,283 @@ class WarehouseResourceTest {
                 .body("size()", is(1));
     }
 
+    @Test
+    void exportDrugs() {
+        given()
+                .when().get("/warehouse/export")
+                .then()
+                .statusCode(200)
+                .contentType(WarehouseResource.APPLICATION_NDJSON)
+                .body(is(""));
+
+        for (int i = 0; i < 3; i++) {
+            DrugCreateDTO drug = new DrugCreateDTO("Drug" + i, "CODE" + i, BigDecimal.valueOf(9.99), 100, 42);
+            given()
+                    .contentType(ContentType.JSON)
+                    .body(drug)
+                    .when().post("/warehouse")
+                    .then()
+                    .statusCode(200);
+        }
+
+        String ndjson = given()
+                .when().get("/warehouse/export")
+                .then()
+                .statusCode(200)
+                .extract().asString();
+
+        String[] lines = ndjson.split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].contains("\"code\":\"CODE0\""));
+        assertTrue(lines[0].contains("\"category\":{"));
+
+        given()
+                .queryParam("format", "json")
+                .when().get("/warehouse/export")
+                .then()
+                .statusCode(200)
+                .contentType(ContentType.JSON)
+                .body("size()", is(3))
+                .body("[2].code", is("CODE2"))
+                .body("[2].category.id", is(42));
+
+        given()
+                .queryParam("format", "xml")
+                .when().get("/warehouse/export")
+                .then()
+                .statusCode(400)
+                .body("violations[0].message", is("Unsupported export format"));
+    }
+
+    @Test
+    void searchDrugs() {
+        given()
+                .contentType(ContentType.JSON)
+                .body(new DrugCreateDTO("Αμοξικιλλίνη", "AMX500", BigDecimal.valueOf(6.40), 10, 42))
+                .when().post("/warehouse")
+                .then()
+                .statusCode(200);
+
+        given()
+                .queryParam("q", "αμοξι")
+                .when().get("/warehouse/search")
+                .then()
+                .statusCode(200)
+                .body("totalItems", is(1))
+                .body("items[0].code", is("AMX500"));
+
+        given()
+                .queryParam("q", "amx")
+                .when().get("/warehouse/search")
+                .then()
+                .statusCode(200)
+                .body("items[0].name", is("Αμοξικιλλίνη"));
+
+        given()
+                .when().get("/warehouse/search")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    void lowStock() throws Exception {
+        int drugId = given()
+                .contentType(ContentType.JSON)
+                .body(new DrugCreateDTO("Aspirin", "ASP100", BigDecimal.valueOf(9.99), 10, 42, 5))
+                .when().post("/warehouse")
+                .then()
+                .statusCode(200)
+                .body("reorderLevel", is(5))
+                .body("lowStock", is(false))
+                .extract().path("id");
+
+        HttpClient client = HttpClient.newHttpClient();
+        CompletableFuture<HttpResponse<Stream<String>>> stream = client.sendAsync(HttpRequest.newBuilder(
+                        URI.create("http://localhost:" + RestAssured.port + "/warehouse/low-stock/stream")).build(),
+                HttpResponse.BodyHandlers.ofLines());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (lowStockStream.subscribers() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        given()
+                .contentType(ContentType.JSON)
+                .body(new TransferCreateDTO(TransferType.OUT, drugId, 6))
+                .when().post("/warehouse/transfer")
+                .then()
+                .statusCode(200);
+
+        String data = stream.get(10, TimeUnit.SECONDS).body()
+                .filter(line -> line.startsWith("data:"))
+                .findFirst()
+                .orElseThrow();
+        assertTrue(data.contains("\"code\":\"ASP100\""));
+        assertTrue(data.contains("\"lowStock\":true"));
+        assertTrue(data.contains("\"stock\":4"));
+
+        given()
+                .when().get("/warehouse/low-stock")
+                .then()
+                .statusCode(200)
+                .body("totalItems", is(1))
+                .body("items[0].code", is("ASP100"));
+
+        given()
+                .contentType(ContentType.JSON)
+                .body(new ReorderLevelDTO(0))
+                .when().put("/warehouse/" + drugId + "/reorder-level")
+                .then()
+                .statusCode(200)
+                .body("lowStock", is(false));
+
+        given()
+                .contentType(ContentType.JSON)
+                .body(new ReorderLevelDTO(-1))
+                .when().put("/warehouse/" + drugId + "/reorder-level")
+                .then()
+                .statusCode(400);
+
+        given()
+                .when().get("/warehouse/low-stock")
+                .then()
+                .statusCode(200)
+                .body("totalItems", is(0));
+    }
+
+    @Test
+    void streamTransfers() throws Exception {
+        int aspirin = createDrug("ASP100");
+        int ibuprofen = createDrug("IBU200");
+
+        CompletableFuture<HttpResponse<Stream<String>>> stream = openTransferStream("?drugIds=" + aspirin, null);
+        postTransfer(ibuprofen, 1);
+        postTransfer(aspirin, 2);
+
+        // the ibuprofen transfer is filtered out
+        String[] event = nextEvent(stream);
+        assertTrue(event[1].contains("\"drugCode\":\"ASP100\""));
+        assertTrue(event[1].contains("\"quantity\":2"));
+
+        // a reconnect with the Last-Event-ID gets the transfer it missed in the meantime
+        postTransfer(aspirin, 3);
+        stream = openTransferStream("?drugIds=" + aspirin, event[0]);
+        assertTrue(nextEvent(stream)[1].contains("\"quantity\":3"));
+
+        given()
+                .header("Last-Event-ID", "abc")
+                .when().get("/warehouse/transfer/stream")
+                .then()
+                .statusCode(400)
+                .body("violations[0].message", is("Invalid Last-Event-ID"));
+    }
+
+    private static int createDrug(String code) {
+        return given()
+                .contentType(ContentType.JSON)
+                .body(new DrugCreateDTO(code, code, BigDecimal.valueOf(9.99), 100, 42))
+                .when().post("/warehouse")
+                .then()
+                .statusCode(200)
+                .extract().path("id");
+    }
+
+    private static void postTransfer(int drugId, int quantity) {
+        given()
+                .contentType(ContentType.JSON)
+                .body(new TransferCreateDTO(TransferType.OUT, drugId, quantity))
+                .when().post("/warehouse/transfer")
+                .then()
+                .statusCode(200);
+    }
+
+    // the response only completes once the server has sent something, so it is read after the transfers are posted
+    private CompletableFuture<HttpResponse<Stream<String>>> openTransferStream(String query, String lastEventId) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(
+                URI.create("http://localhost:" + RestAssured.port + "/warehouse/transfer/stream" + query));
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        int subscribers = transferFeed.subscribers();
+        CompletableFuture<HttpResponse<Stream<String>>> stream = HttpClient.newHttpClient()
+                .sendAsync(request.build(), HttpResponse.BodyHandlers.ofLines());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (transferFeed.subscribers() <= subscribers && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return stream;
+    }
+
+    // the id and data lines of the next transfer event
+    private static String[] nextEvent(CompletableFuture<HttpResponse<Stream<String>>> stream) throws Exception {
+        Iterator<String> lines = stream.get(10, TimeUnit.SECONDS).body().iterator();
+        String id = null;
+        while (lines.hasNext()) {
+            String line = lines.next();
+            if (line.startsWith("id:")) {
+                id = line.substring(3).strip();
+            } else if (line.startsWith("data:") && id != null) {
+                return new String[]{id, line};
+            }
+        }
+        throw new AssertionError("Transfer stream ended");
+    }
+
+    @Test
+    void importDrugs() {
+        String csv = """
+                code,name,price,stock,categoryId
+                CSV1,"Aspirin, 100mg",9.99,100,42
+                CSV2,Ibuprofen,abc,100,42
+                CSV3,Paracetamol,4.50,20,42
+                """;
+
+        given()
+                .contentType(WarehouseResource.TEXT_CSV)
+                .body(csv)
+                .when().post("/warehouse/import")
+                .then()
+                .statusCode(200)
+                .body("imported", is(2))
+                .body("rejected", is(1))
+                .body("rejections[0].line", is(2))
+                .body("rejections[0].error", is("price is not a number"));
+
+        String ndjson = """
+                {"name":"Codeine","code":"JSON1","price":12.5,"stock":5,"categoryId":42}
+                null
+                {"name":"Aspirin","code":"CSV1","price":1,"stock":5,"categoryId":42}
+                """;
+
+        given()
+                .contentType(WarehouseResource.APPLICATION_NDJSON)
+                .body(ndjson)
+                .when().post("/warehouse/import")
+                .then()
+                .statusCode(200)
+                .body("imported", is(1))
+                .body("rejections[0].line", is(2))
+                .body("rejections[0].error", is("Expected a JSON object"))
+                .body("rejections[1].line", is(3))
+                .body("rejections[1].error", is("Duplication found"));
+
+        given()
+                .queryParam("format", "json")
+                .when().get("/warehouse/export")
+                .then()
+                .statusCode(200)
+                .body("size()", is(3))
+                .body("[0].name", is("Aspirin, 100mg"))
+                .body("[2].code", is("JSON1"));
+
+        given()
+                .contentType(WarehouseResource.TEXT_CSV)
+                .body("code,name\nCSV9,Missing")
+                .when().post("/warehouse/import")
+                .then()
+                .statusCode(400)
+                .body("violations[0].message", is("CSV header must name the columns name, code, price, stock and categoryId"));
+    }
+
     @Test
     void testGetAllDrugsPaginated() {
         for (int i = 0; i < 15; i++) {
@@ -137,6 +453,108 @@ class WarehouseResourceTest {
                 .body("totalItems", is(15))
                 .body("totalPages", is(3))
                 .body("items.size()", is(5));
+
+        // cursor returned by the first page
+        String cursor = given()
+                .when().get("/warehouse?limit=10")
+                .then()
+                .statusCode(200)
+                .body("nextCursor", notNullValue())
+                .extract().jsonPath().getString("nextCursor");
+
+        given()
+                .queryParam("cursor", cursor)
+                .when().get("/warehouse")
+                .then()
+                .statusCode(200)
+                .body("totalItems", is(15))
+                .body("items.size()", is(5))
+                .body("nextCursor", nullValue());
+
+        // without totals
+        given()
+                .queryParam("withTotals", false)
+                .when().get("/warehouse")
+                .then()
+                .statusCode(200)
+                .body("totalItems", nullValue())
+                .body("totalPages", nullValue())
+                .body("hasNext", is(true))
+                .body("items.size()", is(10));
+
+        // invalid cursor
+        given()
+                .queryParam("cursor", "not-a-cursor")
+                .when().get("/warehouse")
+                .then()
+                .statusCode(400)
+                .body("violations[0].message", is("Invalid cursor"));
+    }
+
+    @Test
+    void getTransfersColumnar() throws Exception {
+        // an empty page has the columns and tables of its item type
+        JsonPath empty = JsonPath.from(given()
+                .accept(WarehouseResource.APPLICATION_COLUMNAR_JSON)
+                .when().get("/warehouse/transfer?view=full")
+                .then()
+                .statusCode(200)
+                .extract().asString());
+        assertEquals(List.of(), empty.getList("items.quantity"));
+        assertEquals(List.of(), empty.getList("drugs.code"));
+        assertEquals(List.of(), empty.getList("categories.id"));
+        empty = JsonPath.from(given()
+                .accept(WarehouseResource.APPLICATION_COLUMNAR_JSON)
+                .queryParam("q", "nothing")
+                .when().get("/warehouse/search")
+                .then()
+                .statusCode(200)
+                .extract().asString());
+        assertEquals(List.of(), empty.getList("items.code"));
+        assertEquals(List.of(), empty.getList("categories.id"));
+
+        int aspirin = createDrug("ASP100");
+        int ibuprofen = createDrug("IBU200");
+        postTransfer(aspirin, 1);
+        postTransfer(ibuprofen, 2);
+        postTransfer(aspirin, 3);
+
+        // every drug and category is sent once, not once per transfer
+        JsonPath page = JsonPath.from(given()
+                .accept(WarehouseResource.APPLICATION_COLUMNAR_JSON)
+                .when().get("/warehouse/transfer?view=full")
+                .then()
+                .statusCode(200)
+                .contentType(WarehouseResource.APPLICATION_COLUMNAR_JSON)
+                .extract().asString());
+        assertEquals(3, page.getInt("totalItems"));
+        assertEquals(List.of(3, 2, 1), page.getList("items.quantity"));
+        assertEquals(List.of(aspirin, ibuprofen, aspirin), page.getList("items.drugId"));
+        assertEquals(List.of("ASP100", "IBU200"), page.getList("drugs.code"));
+        assertEquals(List.of(42), page.getList("categories.id"));
+        assertTrue(page.getLong("items.transferDate[0]") > 0);
+
+        page = JsonPath.from(given()
+                .accept(WarehouseResource.APPLICATION_COLUMNAR_JSON)
+                .when().get("/warehouse/transfer?view=summary&limit=2")
+                .then()
+                .statusCode(200)
+                .extract().asString());
+        assertEquals(List.of(3, 2), page.getList("items.quantity"));
+        assertEquals(List.of("ASP100", "IBU200"), page.getList("drugs.code"));
+
+        // the plain JSON listing is compressed for clients that accept it
+        HttpResponse<InputStream> response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(
+                                URI.create("http://localhost:" + RestAssured.port + "/warehouse/transfer?view=full"))
+                        .header("Accept", "application/json")
+                        .header("Accept-Encoding", "gzip")
+                        .build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        assertEquals(200, response.statusCode());
+        assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElseThrow());
+        try (InputStream body = new GZIPInputStream(response.body())) {
+            assertEquals(3, JsonPath.from(body).getInt("totalItems"));
+        }
     }
 
     @Test
@@ -354,4 +772,185 @@ class WarehouseResourceTest {
                 .body("violations[0].path", is("createTransfer.quantity"));
     }
 
-}
\ No newline at end of file
+    @Test
+    void createTransferWithIdempotencyKey() {
+        DrugCreateDTO drug = new DrugCreateDTO("Aspirin", "ASP100", BigDecimal.valueOf(9.99), 100, 42);
+        int drugId = given()
+                .contentType(ContentType.JSON)
+                .body(drug)
+                .when().post("/warehouse")
+                .then()
+                .statusCode(200)
+                .extract().jsonPath().getInt("id");
+
+        TransferCreateDTO transfer = new TransferCreateDTO(TransferType.OUT, drugId, 40);
+        int transferId = given()
+                .contentType(ContentType.JSON)
+                .header("Idempotency-Key", "retry-1")
+                .body(transfer)
+                .when().post("/warehouse/transfer")
+                .then()
+                .statusCode(200)
+                .extract().jsonPath().getInt("id");
+
+        given()
+                .contentType(ContentType.JSON)
+                .header("Idempotency-Key", "retry-1")
+                .body(transfer)
+                .when().post("/warehouse/transfer")
+                .then()
+                .statusCode(200)
+                .body("id", is(transferId))
+                .body("drug.stock", is(60));
+
+        given()
+                .when().get("/warehouse/transfer")
+                .then()
+                .statusCode(200)
+                .body("totalItems", is(1));
+    }
+
+    @Test
+    void submitTransferWhenIngestionIsDisabled() {
+        // the endpoint does not exist for this deployment, it is not a bad request
+        given()
+                .contentType(ContentType.JSON)
+                .body(new TransferCreateDTO(TransferType.IN, 1, 10))
+                .when().post("/warehouse/transfer/async")
+                .then()
+                .statusCode(404)
+                .body("violations[0].message", is("Asynchronous ingestion is disabled"));
+    }
+
+    @Test
+    void createTransfers() {
+        DrugCreateDTO drug = new DrugCreateDTO("Aspirin", "ASP100", BigDecimal.valueOf(9.99), 100, 42);
+        int drugId = given()
+                .contentType(ContentType.JSON)
+                .body(drug)
+                .when().post("/warehouse")
+                .then()
+                .statusCode(200)
+                .extract().jsonPath().getInt("id");
+
+        List<TransferCreateDTO> transfers = List.of(
+                new TransferCreateDTO(TransferType.OUT, drugId, 40),
+                new TransferCreateDTO(TransferType.OUT, drugId, 70),
+                new TransferCreateDTO(TransferType.IN, 999, 10));
+
+        given()
+                .contentType(ContentType.JSON)
+                .body(transfers)
+                .when().post("/warehouse/transfer/batch")
+                .then()
+                .statusCode(200)
+                .body("size()", is(3))
+                .body("[0].line", is(0))
+                .body("[0].transferId", notNullValue())
+                .body("[0].error", nullValue())
+                .body("[1].line", is(1))
+                .body("[1].transferId", nullValue())
+                .body("[1].error", is("Insufficient stock"))
+                .body("[2].line", is(2))
+                .body("[2].error", is("Drug not found"));
+
+        given()
+                .when().get("/warehouse/transfer")
+                .then()
+                .statusCode(200)
+                .body("totalItems", is(1));
+    }
+
+    @Test
+    void getTransferSummary() {
+        DrugCreateDTO drug = new DrugCreateDTO("Aspirin", "ASP100", BigDecimal.valueOf(9.99), 100, 42);
+        int drugId = given()
+                .contentType(ContentType.JSON)
+                .body(drug)
+                .when().post("/warehouse")
+                .then()
+                .statusCode(200)
+                .extract().jsonPath().getInt("id");
+
+        given()
+                .contentType(ContentType.JSON)
+                .body(List.of(
+                        new TransferCreateDTO(TransferType.OUT, drugId, 40),
+                        new TransferCreateDTO(TransferType.OUT, drugId, 10),
+                        new TransferCreateDTO(TransferType.IN, drugId, 5)))
+                .when().post("/warehouse/transfer/batch")
+                .then()
+                .statusCode(200);
+
+        given()
+                .queryParam("drugIds", drugId)
+                .queryParam("granularity", "week")
+                .when().get("/warehouse/transfer/summary")
+                .then()
+                .statusCode(200)
+                .body("size()", is(2))
+                .body("[0].type", is("IN"))
+                .body("[0].quantity", is(5))
+                .body("[1].type", is("OUT"))
+                .body("[1].quantity", is(50))
+                .body("[1].transfers", is(2));
+
+        given()
+                .queryParam("granularity", "year")
+                .when().get("/warehouse/transfer/summary")
+                .then()
+                .statusCode(400)
+                .body("violations[0].message", is("Unsupported summary granularity"));
+
+        given()
+                .queryParam("view", "compact")
+                .when().get("/warehouse/transfer")
+                .then()
+                .statusCode(400)
+                .body("violations[0].message", is("Unsupported transfer view"));
+    }
+
+    @Test
+    void metrics() {
+        DrugCreateDTO drug = new DrugCreateDTO("Aspirin", "ASP100", BigDecimal.valueOf(9.99), 10, 42);
+        int drugId = given()
+                .contentType(ContentType.JSON)
+                .body(drug)
+                .when().post("/warehouse")
+                .then()
+                .statusCode(200)
+                .extract().jsonPath().getInt("id");
+
+        given()
+                .contentType(ContentType.JSON)
+                .body(new TransferCreateDTO(TransferType.OUT, drugId, 50))
+                .when().post("/warehouse/transfer")
+                .then()
+                .statusCode(400)
+                .header("validation-exception", "true")
+                .body("error", is("Constraint Violation"))
+                .body("status", is(400))
+                .body("violations[0].message", is("Insufficient stock"));
+
+        given()
+                .contentType(ContentType.JSON)
+                .when().post("/warehouse/transfer")
+                .then()
+                .statusCode(400)
+                .body("violations[0].message", is("Request body is required"));
+
+        given()
+                .when().get("/q/metrics")
+                .then()
+                .statusCode(200)
+                .body(containsString("warehouse_transfer_rejections_total{reason=\"insufficient_stock\"}"))
+                .body(containsString("warehouse_errors_total{exception=\"WarehouseException\",mapper=\"WarehouseExceptionMapper\"}"))
+                .body(containsString("method=\"createTransfer\""))
+                .body(containsString("warehouse_transfer_conflicts_total"))
+                .body(containsString("hibernate_statements_total"))
+                .body(containsString("warehouse_query_plan_cache_total{result=\"hit\"}"))
+                .body(containsString("warehouse_query_plan_cache_hit_ratio"))
+                .body(containsString("agroal_blocking_time"));
+    }
+
+}
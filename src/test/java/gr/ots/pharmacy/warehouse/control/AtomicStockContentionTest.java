@@ -0,0 +1,83 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import gr.ots.pharmacy.warehouse.entity.Transfer;
+import gr.ots.pharmacy.warehouse.entity.TransferType;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+@TestProfile(AtomicStockContentionTest.AtomicStockUpdateProfile.class)
+class AtomicStockContentionTest extends StockContention {
+
+    public static class AtomicStockUpdateProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("warehouse.stock-update-mode", "ATOMIC");
+        }
+    }
+
+    @Inject
+    LowStockEvents lowStockEvents;
+
+    @Test
+    void concurrentOutTransfers() throws Exception {
+        Result result = run();
+
+        // no transfer fails because of contention, the drug ends up exactly at zero
+        assertEquals(0, result.failed());
+        assertEquals(THREADS * TRANSFERS_PER_THREAD, result.succeeded());
+        assertEquals(result.succeeded(), result.transfers());
+        assertEquals(INITIAL_STOCK - result.transferred(), result.finalStock());
+        assertEquals(0, result.finalStock());
+    }
+
+    @Test
+    @Transactional
+    void createTransfer() {
+        Drug drug = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 100, 42));
+
+        Transfer transfer = warehouseService.createTransfer(TransferType.IN, drug.id.intValue(), 10);
+        assertEquals(110, transfer.getDrug().getStock());
+        assertEquals(1, transfer.getDrug().getVersion());
+
+        transfer = warehouseService.createTransfer(TransferType.OUT, drug.id.intValue(), 110);
+        assertEquals(0, transfer.getDrug().getStock());
+
+        IllegalArgumentException illegalArgumentException = assertThrows(IllegalArgumentException.class, () -> warehouseService.createTransfer(TransferType.OUT, drug.id.intValue(), 1));
+        assertEquals("Insufficient stock", illegalArgumentException.getMessage());
+
+        illegalArgumentException = assertThrows(IllegalArgumentException.class, () -> warehouseService.createTransfer(TransferType.IN, 999, 10));
+        assertEquals("Drug not found", illegalArgumentException.getMessage());
+    }
+
+    @Test
+    @Transactional
+    void lowStockCrossing() {
+        lowStockEvents.drain();
+        Drug drug = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 100, 42, 50));
+
+        warehouseService.createTransfer(TransferType.OUT, drug.id.intValue(), 50);
+        assertEquals(List.of(), lowStockEvents.drain());
+
+        // the bulk update sets LOW_STOCK in the same statement as the stock
+        Transfer transfer = warehouseService.createTransfer(TransferType.OUT, drug.id.intValue(), 1);
+        assertTrue(transfer.getDrug().isLowStock());
+        assertEquals(List.of(new LowStockChanged(drug.id, "TEST001", "Test Drug", 49, 50, true)), lowStockEvents.drain());
+
+        transfer = warehouseService.createTransfer(TransferType.IN, drug.id.intValue(), 1);
+        assertFalse(transfer.getDrug().isLowStock());
+        assertFalse(lowStockEvents.drain().getFirst().lowStock());
+    }
+}
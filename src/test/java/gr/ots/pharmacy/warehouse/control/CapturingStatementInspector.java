@@ -0,0 +1,38 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import io.quarkus.hibernate.orm.PersistenceUnitExtension;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Records the SQL Hibernate sends to the database between start() and stop()
+@PersistenceUnitExtension
+@ApplicationScoped
+public class CapturingStatementInspector implements StatementInspector {
+
+    private final Queue<String> statements = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean capturing;
+
+    @Override
+    public String inspect(String sql) {
+        if (capturing) {
+            statements.add(sql);
+        }
+        return sql;
+    }
+
+    public void start() {
+        statements.clear();
+        capturing = true;
+    }
+
+    public List<String> stop() {
+        capturing = false;
+        return new ArrayList<>(statements);
+    }
+}
@@ -0,0 +1,35 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import java.math.BigDecimal;
+
+// Once a drug with the trigger code is created, commits a drug with the other code in a transaction of its own, as a
+// concurrent request would between the code check of an import chunk and its flush
+@ApplicationScoped
+public class ConcurrentDrugInsert {
+
+    @Inject
+    WarehouseService warehouseService;
+
+    private volatile String trigger;
+
+    private volatile String code;
+
+    public void arm(String trigger, String code) {
+        this.code = code;
+        this.trigger = trigger;
+    }
+
+    void onDrugCreated(@Observes DrugCreated event) {
+        if (event.drug().getCode().equals(trigger)) {
+            trigger = null;
+            QuarkusTransaction.requiringNew().run(() ->
+                    warehouseService.createDrug(new DrugCreateDTO(code, code, new BigDecimal("2.50"), 10, 42)));
+        }
+    }
+}
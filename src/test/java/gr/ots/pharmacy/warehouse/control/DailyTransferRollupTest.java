@@ -0,0 +1,88 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import gr.ots.pharmacy.warehouse.entity.Transfer;
+import gr.ots.pharmacy.warehouse.entity.TransferType;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+class DailyTransferRollupTest {
+
+    @Inject
+    DailyTransferRollup dailyTransferRollup;
+
+    @Inject
+    WarehouseService warehouseService;
+
+    @Inject
+    Flyway flyway;
+
+    @Inject
+    CountCache countCache;
+
+    @Inject
+    CatalogueCache catalogueCache;
+
+    @BeforeEach
+    void clean() {
+        flyway.clean();
+        flyway.migrate();
+        countCache.invalidate();
+        catalogueCache.evictAll();
+    }
+
+    @Test
+    void testConcurrentFirstInsertOfABucket() throws Exception {
+        long drugId = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 100, 42)).id;
+        Instant now = Instant.now();
+
+        // the first transaction inserts the bucket and commits only after the second one tried to insert it too
+        CountDownLatch inserted = new CountDownLatch(1);
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> QuarkusTransaction.requiringNew().run(() -> {
+            dailyTransferRollup.add(List.of(transfer(drugId, 10, now)));
+            inserted.countDown();
+            sleep();
+        }));
+        inserted.await(1, TimeUnit.MINUTES);
+        QuarkusTransaction.requiringNew().run(() -> dailyTransferRollup.add(List.of(transfer(drugId, 5, now))));
+        first.get(1, TimeUnit.MINUTES);
+
+        LocalDate today = LocalDate.ofInstant(now, ZoneOffset.UTC);
+        assertEquals(List.of(new TransferSummary(drugId, today, TransferType.IN, 15, 2)),
+                warehouseService.getTransferSummary(List.of(drugId), today, today, SummaryGranularity.DAY));
+    }
+
+    private static Transfer transfer(long drugId, int quantity, Instant transferDate) {
+        Transfer transfer = new Transfer();
+        transfer.setType(TransferType.IN);
+        transfer.setDrug(Drug.findById(drugId));
+        transfer.setQuantity(quantity);
+        transfer.setTransferDate(transferDate);
+        return transfer;
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
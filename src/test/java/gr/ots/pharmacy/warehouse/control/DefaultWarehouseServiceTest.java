@@ -1,22 +1,35 @@
 package gr.ots.pharmacy.warehouse.control;
 
 import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import gr.ots.pharmacy.warehouse.boundary.TransferCreateDTO;
 import gr.ots.pharmacy.warehouse.entity.Category;
 import gr.ots.pharmacy.warehouse.entity.Drug;
 import gr.ots.pharmacy.warehouse.entity.Transfer;
 import gr.ots.pharmacy.warehouse.entity.TransferType;
+import io.quarkus.narayana.jta.QuarkusTransaction;
 import io.quarkus.test.junit.QuarkusTest;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
 import org.flywaydb.core.Flyway;
+import org.hibernate.SessionFactory;
 import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -29,10 +42,32 @@ class DefaultWarehouseServiceTest {
     @Inject
     Flyway flyway;
 
+    @Inject
+    CountCache countCache;
+
+    @Inject
+    CatalogueCache catalogueCache;
+
+    @Inject
+    SessionFactory sessionFactory;
+
+    @Inject
+    StockSnapshots stockSnapshots;
+
+    @Inject
+    DrugSearchIndex drugSearchIndex;
+
+    @Inject
+    LowStockEvents lowStockEvents;
+
     @BeforeEach
     void clean() {
         flyway.clean();
         flyway.migrate();
+        countCache.invalidate();
+        catalogueCache.evictAll();
+        drugSearchIndex.reload();
+        lowStockEvents.drain();
     }
 
     private Drug createDrug() {
@@ -104,6 +139,72 @@ class DefaultWarehouseServiceTest {
         assertFalse(result.items().isEmpty());
     }
 
+    @Test
+    @Transactional
+    void testGetAllDrugsWithCursor() {
+        for (int i = 0; i < 5; i++) {
+            warehouseService.createDrug(new DrugCreateDTO("Drug" + i, "CODE" + i, new BigDecimal("1.00"), 10, 42));
+        }
+
+        PagedResult<Drug> first = warehouseService.getAllDrugs(new PageRequest(1, 2, null));
+        assertEquals(2, first.items().size());
+        assertEquals(5, first.totalItems());
+        assertNotNull(first.nextCursor());
+
+        PagedResult<Drug> second = warehouseService.getAllDrugs(new PageRequest(1, 2, first.nextCursor()));
+        assertEquals(2, second.items().size());
+        assertNotNull(second.nextCursor());
+
+        PagedResult<Drug> third = warehouseService.getAllDrugs(new PageRequest(1, 2, second.nextCursor()));
+        assertEquals(1, third.items().size());
+        assertNull(third.nextCursor());
+
+        // the cursor walk returns the same drugs as offset paging, in the same order
+        List<Long> walked = Stream.of(first, second, third).flatMap(result -> result.items().stream()).map(drug -> drug.id).toList();
+        List<Long> paged = warehouseService.getAllDrugs(1, 5).items().stream().map(drug -> drug.id).toList();
+        assertEquals(paged, walked);
+
+        IllegalArgumentException illegalArgumentException = assertThrows(IllegalArgumentException.class, () -> warehouseService.getAllDrugs(new PageRequest(1, 2, "not-a-cursor")));
+        assertEquals("Invalid cursor", illegalArgumentException.getMessage());
+    }
+
+    @Test
+    @Transactional
+    void testGetAllDrugsWithoutTotals() {
+        for (int i = 0; i < 3; i++) {
+            warehouseService.createDrug(new DrugCreateDTO("Drug" + i, "CODE" + i, new BigDecimal("1.00"), 10, 42));
+        }
+
+        PagedResult<Drug> result = warehouseService.getAllDrugs(new PageRequest(1, 2, null, false));
+        assertNull(result.totalItems());
+        assertNull(result.totalPages());
+        assertTrue(result.hasNext());
+        assertEquals(2, result.items().size());
+
+        result = warehouseService.getAllDrugs(new PageRequest(2, 2, null, false));
+        assertFalse(result.hasNext());
+        assertEquals(1, result.items().size());
+
+        result = warehouseService.getAllDrugs(new PageRequest(1, 3, null, false));
+        assertFalse(result.hasNext());
+        assertEquals(3, result.items().size());
+    }
+
+    @Test
+    @Transactional
+    void testTotalsAreInvalidatedOnWrites() {
+        Drug drug = createDrug();
+
+        assertEquals(1, warehouseService.getAllDrugs(1, 10).totalItems());
+        assertEquals(0, warehouseService.getTransfers(1, 10, List.of(drug.id), null, null).totalItems());
+
+        warehouseService.createDrug(new DrugCreateDTO("Other Drug", "OTHER001", new BigDecimal("1.00"), 10, 42));
+        warehouseService.createTransfer(TransferType.IN, drug.id.intValue(), 5);
+
+        assertEquals(2, warehouseService.getAllDrugs(1, 10).totalItems());
+        assertEquals(1, warehouseService.getTransfers(1, 10, List.of(drug.id), null, null).totalItems());
+    }
+
     @Test
     @Transactional
     void testCreateTransfer() {
@@ -157,6 +258,261 @@ class DefaultWarehouseServiceTest {
         assertEquals("createTransfer.quantity", violations.getFirst().getPropertyPath().toString());
     }
 
+    @Test
+    void testExportDrugs() {
+        for (int i = 0; i < 3; i++) {
+            warehouseService.createDrug(new DrugCreateDTO("Drug" + i, "CODE" + i, new BigDecimal("9.99"), 100, 42));
+        }
+
+        // the consumer runs between the short page transactions, a slow client holds no transaction open
+        List<String> codes = new ArrayList<>();
+        warehouseService.exportDrugs(drug -> {
+            assertFalse(QuarkusTransaction.isActive());
+            codes.add(drug.getCode() + "/" + drug.getCategory().getName());
+        });
+
+        assertEquals(List.of("CODE0/CAT_42", "CODE1/CAT_42", "CODE2/CAT_42"), codes);
+    }
+
+    @Test
+    void testCreateTransferWithIdempotencyKey() {
+        long drugId = QuarkusTransaction.requiringNew().call(() -> createDrug().id);
+
+        Transfer first = warehouseService.createTransfer(TransferType.OUT, (int) drugId, 30, "order-1");
+        Transfer replay = warehouseService.createTransfer(TransferType.OUT, (int) drugId, 30, "order-1");
+        Transfer other = warehouseService.createTransfer(TransferType.OUT, (int) drugId, 30, "order-2");
+
+        assertEquals(first.id, replay.id);
+        assertNotEquals(first.id, other.id);
+        assertEquals(40, QuarkusTransaction.requiringNew().call(() -> Drug.<Drug>findById(drugId).getStock()));
+        assertEquals(2, QuarkusTransaction.requiringNew().call(() -> Transfer.count()));
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> warehouseService.createTransfer(TransferType.IN, (int) drugId, 30, "order-1"));
+        assertEquals("Idempotency-Key was already used for a different transfer", exception.getMessage());
+    }
+
+    @Test
+    void testCreateTransferWithConcurrentIdempotencyKey() throws Exception {
+        long drugId = QuarkusTransaction.requiringNew().call(() -> createDrug().id);
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return warehouseService.createTransfer(TransferType.OUT, (int) drugId, 5, "order-1").id;
+            }));
+        }
+        start.countDown();
+
+        List<Long> ids = new ArrayList<>();
+        for (Future<Long> future : futures) {
+            ids.add(future.get(1, TimeUnit.MINUTES));
+        }
+        executor.shutdown();
+
+        assertEquals(1, ids.stream().distinct().count());
+        assertEquals(95, QuarkusTransaction.requiringNew().call(() -> Drug.<Drug>findById(drugId).getStock()));
+        assertEquals(1, QuarkusTransaction.requiringNew().call(() -> Transfer.count()));
+    }
+
+    @Test
+    @Transactional
+    void testCreateTransfers() {
+        Drug drug = createDrug();
+
+        List<TransferBatchResult> results = warehouseService.createTransfers(List.of(
+                new TransferCreateDTO(TransferType.IN, drug.id.intValue(), 10),
+                new TransferCreateDTO(TransferType.OUT, drug.id.intValue(), 50),
+                new TransferCreateDTO(TransferType.OUT, drug.id.intValue(), 100),
+                new TransferCreateDTO(TransferType.IN, 999, 10),
+                new TransferCreateDTO(TransferType.IN, drug.id.intValue(), -1),
+                new TransferCreateDTO(null, drug.id.intValue(), 1)));
+
+        assertEquals(6, results.size());
+        for (int line = 0; line < results.size(); line++) {
+            assertEquals(line, results.get(line).line());
+        }
+
+        assertNotNull(results.get(0).transferId());
+        assertNull(results.get(0).error());
+        assertNotNull(results.get(1).transferId());
+        assertNull(results.get(1).error());
+
+        // 100 + 10 - 50 leaves 60, so the third line is rejected
+        assertNull(results.get(2).transferId());
+        assertEquals("Insufficient stock", results.get(2).error());
+        assertEquals("Drug not found", results.get(3).error());
+        assertEquals("quantity must be greater than 0", results.get(4).error());
+        assertEquals("type must not be null", results.get(5).error());
+
+        assertEquals(60, drug.getStock());
+        assertEquals(2, Transfer.count());
+    }
+
+    @Test
+    void testGetStockAt() throws InterruptedException {
+        Drug drug = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 100, 42));
+        Instant beforeTransfers = Instant.now();
+        Thread.sleep(5);
+        warehouseService.createTransfer(TransferType.OUT, drug.id.intValue(), 30);
+        Thread.sleep(5);
+        Instant afterOut = Instant.now();
+        Thread.sleep(5);
+        warehouseService.createTransfer(TransferType.IN, drug.id.intValue(), 10);
+
+        // no checkpoint yet, derived from the current stock
+        assertEquals(70, warehouseService.getStockAt(drug.id, afterOut).stock());
+        assertEquals(100, warehouseService.getStockAt(drug.id, beforeTransfers).stock());
+        assertEquals(0, warehouseService.getStockAt(drug.id, drug.getCreatedAt().minusSeconds(1)).stock());
+
+        assertEquals(1, stockSnapshots.checkpoint(afterOut));
+        // nothing moved since, the checkpoint is not written again
+        assertEquals(0, stockSnapshots.checkpoint(afterOut.plusMillis(1)));
+
+        StockLevel atCheckpoint = warehouseService.getStockAt(drug.id, afterOut);
+        assertEquals(70, atCheckpoint.stock());
+        assertNotNull(atCheckpoint.snapshotAt());
+        assertEquals(80, warehouseService.getStockAt(drug.id, Instant.now()).stock());
+        assertEquals(100, warehouseService.getStockAt(drug.id, beforeTransfers).stock());
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> warehouseService.getStockAt(999, Instant.now()));
+        assertEquals("Drug not found", exception.getMessage());
+    }
+
+    @Test
+    @Transactional
+    void testGetTransferSummary() {
+        Drug drug = createDrug();
+        warehouseService.createTransfer(TransferType.IN, drug.id.intValue(), 10);
+        warehouseService.createTransfer(TransferType.OUT, drug.id.intValue(), 30);
+        warehouseService.createTransfers(List.of(
+                new TransferCreateDTO(TransferType.OUT, drug.id.intValue(), 5),
+                new TransferCreateDTO(TransferType.OUT, drug.id.intValue(), 15)));
+
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+
+        List<TransferSummary> daily = warehouseService.getTransferSummary(List.of(drug.id), today, today, SummaryGranularity.DAY);
+        assertEquals(List.of(
+                new TransferSummary(drug.id, today, TransferType.IN, 10, 1),
+                new TransferSummary(drug.id, today, TransferType.OUT, 50, 3)), daily);
+
+        List<TransferSummary> monthly = warehouseService.getTransferSummary(null, today.minusMonths(1), today, SummaryGranularity.MONTH);
+        assertEquals(2, monthly.size());
+        assertEquals(today.withDayOfMonth(1), monthly.getFirst().period());
+        assertEquals(50, monthly.getLast().quantity());
+
+        assertTrue(warehouseService.getTransferSummary(null, today.minusDays(7), today.minusDays(1), SummaryGranularity.WEEK).isEmpty());
+        assertThrows(IllegalArgumentException.class,
+                () -> warehouseService.getTransferSummary(null, today, today.minusDays(1), SummaryGranularity.DAY));
+    }
+
+    @Test
+    @Transactional
+    void testGetTransfersWithCursor() {
+        Drug drug = createDrug();
+        for (int i = 0; i < 3; i++) {
+            warehouseService.createTransfer(TransferType.IN, drug.id.intValue(), 1);
+        }
+
+        PagedResult<Transfer> first = warehouseService.getTransfers(new PageRequest(1, 2, null), List.of(drug.id), null, null);
+        assertEquals(2, first.items().size());
+        assertEquals(3, first.totalItems());
+        assertNotNull(first.nextCursor());
+
+        PagedResult<Transfer> second = warehouseService.getTransfers(new PageRequest(1, 2, first.nextCursor()), List.of(drug.id), null, null);
+        assertEquals(1, second.items().size());
+        assertEquals(3, second.totalItems());
+        assertNull(second.nextCursor());
+        assertFalse(first.items().contains(second.items().getFirst()));
+    }
+
+    @Test
+    void testGetTransfersReusesQueryPlans() {
+        List<Long> drugIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            drugIds.add(warehouseService.createDrug(new DrugCreateDTO("Test Drug " + i, "TEST00" + i, new BigDecimal("10.99"), 100, 42)).id);
+        }
+        Instant from = Instant.now().minus(1, ChronoUnit.DAYS);
+
+        // the first call of a filter shape interprets its queries
+        warehouseService.getTransfers(PageRequest.of(1, 10), drugIds.subList(0, 3), from, null);
+
+        // the same shape with other values and another number of drugs in the same IN padding bucket is served from the
+        // plan cache, the rows and the count query of each call
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+        warehouseService.getTransfers(PageRequest.of(1, 10), drugIds.subList(0, 4), from.minusSeconds(1), null);
+        warehouseService.getTransfers(PageRequest.of(2, 10), drugIds.subList(1, 5), from.minusSeconds(2), null);
+        assertEquals(0, statistics.getQueryPlanCacheMissCount());
+        assertTrue(statistics.getQueryPlanCacheHitCount() >= 4, "hits: " + statistics.getQueryPlanCacheHitCount());
+        assertEquals(1.0, QueryPlanMetrics.hitRatio(statistics));
+    }
+
+    @Test
+    void testGetTransferViewsStatementCount() {
+        long drugId = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 100, 42)).id;
+        long otherDrugId = warehouseService.createDrug(new DrugCreateDTO("Other Drug", "OTHER001", new BigDecimal("1.99"), 100, 42)).id;
+        for (int i = 0; i < 10; i++) {
+            warehouseService.createTransfer(TransferType.OUT, (int) (i % 2 == 0 ? drugId : otherDrugId), 1);
+        }
+
+        Statistics statistics = sessionFactory.getStatistics();
+
+        // the archive watermark, page query and count query
+        statistics.clear();
+        PagedResult<TransferView> views = warehouseService.getTransferViews(new PageRequest(1, 10, null), null, null, null);
+        assertEquals(10, views.items().size());
+        assertEquals(10, views.totalItems());
+        assertEquals(3, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+
+        TransferView view = views.items().getFirst();
+        assertEquals(otherDrugId, view.drugId());
+        assertEquals("OTHER001", view.drugCode());
+        assertEquals("Other Drug", view.drugName());
+        assertEquals(TransferType.OUT, view.type());
+        assertEquals(1, view.quantity());
+        assertNotNull(view.transferDate());
+
+        // the count is cached now
+        statistics.clear();
+        warehouseService.getTransferViews(new PageRequest(1, 10, null), null, null, null);
+        assertEquals(2, statistics.getPrepareStatementCount());
+
+        // the entity listing fetches drug and category in the same statement as the page
+        statistics.clear();
+        PagedResult<Transfer> transfers = warehouseService.getTransfers(new PageRequest(1, 10, null, false), null, null, null);
+        assertEquals(10, transfers.items().size());
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void testCatalogueCache() {
+        long drugId = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 100, 42)).id;
+        warehouseService.createDrug(new DrugCreateDTO("Other Drug", "OTHER001", new BigDecimal("1.99"), 100, 42));
+
+        for (int i = 0; i < 3; i++) {
+            warehouseService.createTransfer(TransferType.OUT, (int) drugId, 1);
+        }
+
+        List<CacheStatistics> statistics = catalogueCache.statistics();
+        assertEquals(2, statistics.size());
+
+        CacheStatistics categories = statistics.get(0);
+        assertEquals(Category.class.getName(), categories.region());
+        assertTrue(categories.hits() > 0);
+
+        CacheStatistics drugs = statistics.get(1);
+        assertEquals(Drug.class.getName(), drugs.region());
+        assertTrue(drugs.hits() >= 3);
+
+        // updates are written through, the cached drug is not stale
+        assertEquals(97, QuarkusTransaction.requiringNew().call(() -> Drug.<Drug>findById(drugId).getStock()));
+    }
+
     @Test
     @Transactional
     void testGetTransfers() {
@@ -253,4 +609,114 @@ class DefaultWarehouseServiceTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    void testSearchDrugs() {
+        warehouseService.createDrug(new DrugCreateDTO("Παρακεταμόλη Forte", "PAR500", new BigDecimal("3.50"), 10, 42));
+        warehouseService.createDrug(new DrugCreateDTO("Ibuprofène 400", "IBU400", new BigDecimal("4.10"), 10, 42));
+        warehouseService.createDrug(new DrugCreateDTO("Ibuprofen Junior", "IBU200", new BigDecimal("2.90"), 10, 42));
+        warehouseService.createDrug(new DrugCreateDTO("Aspirin", "ASP100", new BigDecimal("1.99"), 10, 42));
+
+        // accents, case and the final sigma are ignored on both sides
+        assertEquals(List.of("PAR500"), codes(warehouseService.searchDrugs("ΠΑΡΑΚΕΤΑΜΟΛΗ", PageRequest.of(1, 10))));
+        assertEquals(List.of("PAR500"), codes(warehouseService.searchDrugs("παρακ forte", PageRequest.of(1, 10))));
+        assertEquals(List.of(), codes(warehouseService.searchDrugs("παρακ junior", PageRequest.of(1, 10))));
+
+        // an exact word ranks before a prefix, ties by code
+        assertEquals(List.of("IBU200", "IBU400"), codes(warehouseService.searchDrugs("ibuprofen", PageRequest.of(1, 10))));
+        assertEquals(List.of("IBU400"), codes(warehouseService.searchDrugs("ibuprofene", PageRequest.of(1, 10))));
+        assertEquals(List.of("IBU200", "IBU400"), codes(warehouseService.searchDrugs("ibu", PageRequest.of(1, 10))));
+
+        // code prefixes rank before name matches
+        assertEquals(List.of("ASP100"), codes(warehouseService.searchDrugs("asp1", PageRequest.of(1, 10))));
+
+        PagedResult<Drug> first = warehouseService.searchDrugs("ibu", PageRequest.of(1, 1));
+        assertEquals(2L, first.totalItems());
+        assertEquals(2, first.totalPages());
+        assertTrue(first.hasNext());
+        assertEquals(List.of("IBU200"), codes(first));
+        PagedResult<Drug> second = warehouseService.searchDrugs("ibu", PageRequest.of(2, 1));
+        assertFalse(second.hasNext());
+        assertEquals(List.of("IBU400"), codes(second));
+
+        // words shorter than the minimum prefix only match whole codes and words
+        assertEquals(0L, warehouseService.searchDrugs("ib", PageRequest.of(1, 10)).totalItems());
+        assertEquals(List.of("IBU400"), codes(warehouseService.searchDrugs("400", PageRequest.of(1, 10))));
+        assertEquals(List.of(), codes(warehouseService.searchDrugs("40", PageRequest.of(1, 10))));
+
+        // drugs created after the index was built are found too
+        warehouseService.createDrug(new DrugCreateDTO("Ασπιρίνη", "ASP500", new BigDecimal("2.50"), 10, 42));
+        assertEquals(List.of("ASP100", "ASP500"), codes(warehouseService.searchDrugs("asp", PageRequest.of(1, 10))));
+        assertEquals(List.of("ASP500"), codes(warehouseService.searchDrugs("ασπιρινη", PageRequest.of(1, 10))));
+
+        // codes that only differ in case are distinct drugs, both are found
+        warehouseService.createDrug(new DrugCreateDTO("Aspirin Junior", "asp500", new BigDecimal("1.50"), 10, 42));
+        assertEquals(List.of("ASP500", "asp500"), codes(warehouseService.searchDrugs("asp500", PageRequest.of(1, 10))));
+
+        assertThrows(jakarta.validation.ConstraintViolationException.class, () -> warehouseService.searchDrugs(" ", PageRequest.of(1, 10)));
+    }
+
+    @Test
+    void testLowStock() {
+        long drugId = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 30, 42, 20)).id;
+        long otherId = warehouseService.createDrug(new DrugCreateDTO("Other Drug", "TEST002", new BigDecimal("1.99"), 5, 42)).id;
+        assertEquals(0, warehouseService.getLowStockDrugs(PageRequest.of(1, 10)).totalItems());
+
+        // only the transfer that crosses the reorder level is an event
+        warehouseService.createTransfer(TransferType.OUT, (int) drugId, 5);
+        assertEquals(List.of(), lowStockEvents.drain());
+        warehouseService.createTransfer(TransferType.OUT, (int) drugId, 10);
+        List<LowStockChanged> events = lowStockEvents.drain();
+        assertEquals(1, events.size());
+        assertEquals(new LowStockChanged(drugId, "TEST001", "Test Drug", 15, 20, true), events.getFirst());
+        warehouseService.createTransfer(TransferType.OUT, (int) drugId, 1);
+        assertEquals(List.of(), lowStockEvents.drain());
+
+        PagedResult<Drug> lowStock = warehouseService.getLowStockDrugs(PageRequest.of(1, 10));
+        assertEquals(1L, lowStock.totalItems());
+        assertEquals(drugId, (long) lowStock.items().getFirst().id);
+
+        // raising the reorder level of the other drug flags it as well, newest first
+        warehouseService.setReorderLevel(otherId, 10);
+        assertTrue(lowStockEvents.drain().getFirst().lowStock());
+        lowStock = warehouseService.getLowStockDrugs(new PageRequest(1, 1, null));
+        assertEquals(2L, lowStock.totalItems());
+        assertEquals(otherId, (long) lowStock.items().getFirst().id);
+        lowStock = warehouseService.getLowStockDrugs(new PageRequest(1, 1, lowStock.nextCursor()));
+        assertEquals(drugId, (long) lowStock.items().getFirst().id);
+        assertNull(lowStock.nextCursor());
+
+        // a batch is one crossing per drug, whatever the number of lines
+        warehouseService.createTransfers(List.of(
+                new TransferCreateDTO(TransferType.IN, (int) drugId, 3),
+                new TransferCreateDTO(TransferType.IN, (int) drugId, 10)));
+        events = lowStockEvents.drain();
+        assertEquals(1, events.size());
+        assertFalse(events.getFirst().lowStock());
+        assertEquals(27, events.getFirst().stock());
+        assertEquals(List.of(otherId), warehouseService.getLowStockDrugs(PageRequest.of(1, 10)).items().stream().map(drug -> drug.id).toList());
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> warehouseService.setReorderLevel(999, 1));
+        assertEquals("Drug not found", exception.getMessage());
+    }
+
+    @Test
+    void testBusinessErrorsAreStackless() {
+        long drugId = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 1, 42)).id;
+
+        WarehouseException exception = assertThrows(WarehouseException.class, () -> warehouseService.createTransfer(TransferType.OUT, (int) drugId, 2));
+        assertEquals(WarehouseError.INSUFFICIENT_STOCK, exception.error());
+        assertEquals("Insufficient stock", exception.getMessage());
+        assertEquals(0, exception.getStackTrace().length);
+
+        exception = assertThrows(WarehouseException.class, () -> warehouseService.getStockAt(999, Instant.now()));
+        assertEquals(WarehouseError.DRUG_NOT_FOUND, exception.error());
+
+        // still an IllegalArgumentException for the callers that catch those
+        assertInstanceOf(IllegalArgumentException.class, exception);
+    }
+
+    private static List<String> codes(PagedResult<Drug> result) {
+        return result.items().stream().map(Drug::getCode).toList();
+    }
+
+}
@@ -0,0 +1,121 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.flywaydb.core.Flyway;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+class DrugImportTest {
+
+    // every line is "code" or "code,categoryId", the code doubles as the name
+    private static final Function<String, DrugCreateDTO> PARSER = line -> {
+        String[] fields = line.split(",");
+        if (fields[0].equals("broken")) {
+            throw new IllegalArgumentException("Malformed line");
+        }
+        int categoryId = fields.length > 1 ? Integer.parseInt(fields[1]) : 42;
+        return new DrugCreateDTO(fields[0], fields[0], new BigDecimal("1.50"), 10, categoryId);
+    };
+
+    @Inject
+    DrugImport drugImport;
+
+    @Inject
+    WarehouseService warehouseService;
+
+    @Inject
+    Flyway flyway;
+
+    @Inject
+    CountCache countCache;
+
+    @Inject
+    CatalogueCache catalogueCache;
+
+    @Inject
+    SessionFactory sessionFactory;
+
+    @Inject
+    ConcurrentDrugInsert concurrentDrugInsert;
+
+    @BeforeEach
+    void clean() {
+        flyway.clean();
+        flyway.migrate();
+        countCache.invalidate();
+        catalogueCache.evictAll();
+    }
+
+    @Test
+    void testImportInChunks() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            lines.add("IMP" + i);
+        }
+
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+        DrugImportResult result = drugImport.importDrugs(lines.iterator(), PARSER);
+
+        assertEquals(2500, result.imported());
+        assertEquals(0, result.rejected());
+        assertEquals(2500, Drug.count());
+        assertEquals(2500, warehouseService.getAllDrugs(PageRequest.of(1, 10)).totalItems());
+
+        // 3 chunks, each with one category and one code lookup, and the inserts and sequence calls in batches of 50
+        assertEquals(2500, statistics.getEntityInsertCount());
+        assertTrue(statistics.getPrepareStatementCount() < 150, "statements: " + statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void testRejectedLinesDoNotFailTheChunk() {
+        warehouseService.createDrug(new DrugCreateDTO("Existing", "EXISTING", new BigDecimal("10.99"), 100, 42));
+
+        DrugImportResult result = drugImport.importDrugs(List.of(
+                "IMP1",
+                "broken",
+                "",
+                "IMP2,999",
+                "EXISTING",
+                "IMP1",
+                "X",
+                "IMP3").iterator(), PARSER);
+
+        assertEquals(2, result.imported());
+        assertEquals(5, result.rejected());
+        assertEquals(List.of(
+                new DrugImportResult.Rejection(2, "Malformed line"),
+                new DrugImportResult.Rejection(4, "Category not found"),
+                new DrugImportResult.Rejection(5, "Duplication found"),
+                new DrugImportResult.Rejection(6, "Duplication found"),
+                new DrugImportResult.Rejection(7, "name size must be between 2 and 100")), result.rejections());
+        assertEquals(3, Drug.count());
+    }
+
+    @Test
+    void testConcurrentInsertRejectsOnlyTheLosingLine() {
+        // RACE2 is committed elsewhere after the chunk checked its codes, the chunk fails on the unique constraint
+        concurrentDrugInsert.arm("RACE1", "RACE2");
+
+        DrugImportResult result = drugImport.importDrugs(List.of("RACE1", "RACE2", "RACE3").iterator(), PARSER);
+
+        assertEquals(2, result.imported());
+        assertEquals(1, result.rejected());
+        assertEquals(List.of(new DrugImportResult.Rejection(2, "Duplication found")), result.rejections());
+        assertEquals(3, Drug.count());
+        assertEquals(new BigDecimal("2.50"), Drug.<Drug>find("code", "RACE2").firstResult().getPrice());
+    }
+}
@@ -0,0 +1,94 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import gr.ots.pharmacy.warehouse.entity.TransferType;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+@TestProfile(FileOutboxSinkTest.SmallFileProfile.class)
+class FileOutboxSinkTest {
+
+    private static final Path DIRECTORY = Path.of("target/outbox-rotation");
+
+    // one transfer per batch, and a file that only fits one of them
+    public static class SmallFileProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("warehouse.outbox.file", DIRECTORY.resolve("transfers.ndjson").toString(),
+                    "warehouse.outbox.file-max-bytes", "200",
+                    "warehouse.outbox.batch-size", "1");
+        }
+    }
+
+    @Inject
+    OutboxRelay outboxRelay;
+
+    @Inject
+    WarehouseService warehouseService;
+
+    @Inject
+    Flyway flyway;
+
+    @Inject
+    CountCache countCache;
+
+    @Inject
+    CatalogueCache catalogueCache;
+
+    @BeforeEach
+    void clean() throws IOException {
+        flyway.clean();
+        flyway.migrate();
+        countCache.invalidate();
+        catalogueCache.evictAll();
+        for (Path file : files()) {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void rotateFullFiles() throws IOException {
+        Drug drug = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 100, 42));
+        for (int i = 0; i < 3; i++) {
+            warehouseService.createTransfer(TransferType.OUT, drug.id.intValue(), 1);
+        }
+
+        assertEquals(3, outboxRelay.relay());
+
+        // the current file and two rotated ones, no line lost or split
+        List<Path> files = files();
+        assertEquals(3, files.size());
+        assertTrue(files.contains(DIRECTORY.resolve("transfers.ndjson")));
+        for (Path file : files) {
+            List<String> lines = Files.readAllLines(file);
+            assertEquals(1, lines.size());
+            assertTrue(lines.getFirst().contains("\"drugCode\":\"TEST001\""));
+        }
+    }
+
+    private static List<Path> files() throws IOException {
+        if (!Files.isDirectory(DIRECTORY)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(DIRECTORY)) {
+            return files.toList();
+        }
+    }
+}
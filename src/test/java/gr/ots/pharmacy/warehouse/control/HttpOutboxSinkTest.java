@@ -0,0 +1,92 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.boundary.AccountingStandIn;
+import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import gr.ots.pharmacy.warehouse.entity.TransferOutbox;
+import gr.ots.pharmacy.warehouse.entity.TransferType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+@TestProfile(HttpOutboxSinkTest.HttpSinkProfile.class)
+class HttpOutboxSinkTest {
+
+    public static class HttpSinkProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("warehouse.outbox.sink", "HTTP",
+                    "warehouse.outbox.http.url", "http://localhost:${quarkus.http.test-port:8081}/accounting/transfers",
+                    "warehouse.outbox.batch-size", "2");
+        }
+    }
+
+    @Inject
+    OutboxRelay outboxRelay;
+
+    @Inject
+    WarehouseService warehouseService;
+
+    @Inject
+    AccountingStandIn accountingStandIn;
+
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    Flyway flyway;
+
+    @Inject
+    CountCache countCache;
+
+    @Inject
+    CatalogueCache catalogueCache;
+
+    @BeforeEach
+    void clean() {
+        flyway.clean();
+        flyway.migrate();
+        countCache.invalidate();
+        catalogueCache.evictAll();
+        accountingStandIn.reset();
+    }
+
+    @Test
+    void redeliverUntilAccepted() throws IOException {
+        Drug drug = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 100, 42));
+        for (int i = 0; i < 3; i++) {
+            warehouseService.createTransfer(TransferType.OUT, drug.id.intValue(), 1);
+        }
+
+        // a failed batch stays in the outbox
+        double failures = registry.counter("warehouse.outbox.failures").count();
+        accountingStandIn.setUnavailable(true);
+        assertThrows(IOException.class, () -> outboxRelay.relay());
+        assertEquals(3, pending());
+        assertEquals(failures + 1, registry.counter("warehouse.outbox.failures").count());
+
+        accountingStandIn.setUnavailable(false);
+        assertEquals(3, outboxRelay.relay());
+        assertEquals(0, pending());
+        assertEquals(2, accountingStandIn.requests());
+        assertEquals(3, accountingStandIn.received().size());
+        assertTrue(accountingStandIn.received().getFirst().contains("\"drugCode\":\"TEST001\""));
+    }
+
+    private static long pending() {
+        return QuarkusTransaction.requiringNew().call(() -> TransferOutbox.count());
+    }
+}
@@ -0,0 +1,105 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import gr.ots.pharmacy.warehouse.entity.Transfer;
+import gr.ots.pharmacy.warehouse.entity.TransferType;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+@TestProfile(IdempotencyKeyPoolTest.SmallPoolProfile.class)
+class IdempotencyKeyPoolTest {
+
+    private static final int REQUESTS = 32;
+
+    private static final int KEYS = 8;
+
+    // far fewer connections than concurrent keyed requests, a request holding one while waiting for another would
+    // stall every request until the acquisition timeout
+    public static class SmallPoolProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("quarkus.datasource.jdbc.max-size", "4",
+                    "quarkus.datasource.jdbc.acquisition-timeout", "5S");
+        }
+    }
+
+    @Inject
+    WarehouseService warehouseService;
+
+    @Inject
+    Flyway flyway;
+
+    @Inject
+    CountCache countCache;
+
+    @Inject
+    CatalogueCache catalogueCache;
+
+    @BeforeEach
+    void clean() {
+        flyway.clean();
+        flyway.migrate();
+        countCache.invalidate();
+        catalogueCache.evictAll();
+    }
+
+    @Test
+    void moreKeyedRequestsThanConnections() throws Exception {
+        // a drug per key, different keys do not contend on the version of one drug row
+        List<Long> drugIds = new ArrayList<>();
+        for (int i = 0; i < KEYS; i++) {
+            String code = "TEST00" + i;
+            drugIds.add(QuarkusTransaction.requiringNew().call(() -> warehouseService.createDrug(
+                    new DrugCreateDTO("Test Drug", code, new BigDecimal("10.99"), 100, 42)).id));
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(REQUESTS);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            String key = "order-" + i % KEYS;
+            int drugId = drugIds.get(i % KEYS).intValue();
+            futures.add(executor.submit(() -> {
+                start.await();
+                return warehouseService.createTransfer(TransferType.OUT, drugId, 5, key).id;
+            }));
+        }
+        start.countDown();
+
+        List<Long> ids = new ArrayList<>();
+        for (Future<Long> future : futures) {
+            ids.add(future.get(1, TimeUnit.MINUTES));
+        }
+        executor.shutdown();
+
+        // every request of a key got the same transfer, and the stock moved once per key
+        for (int i = 0; i < REQUESTS; i++) {
+            assertEquals(ids.get(i % KEYS), ids.get(i));
+        }
+        assertEquals(KEYS, ids.stream().distinct().count());
+        for (long drugId : drugIds) {
+            assertEquals(95, QuarkusTransaction.requiringNew().call(() -> Drug.<Drug>findById(drugId).getStock()));
+        }
+        assertEquals(KEYS, QuarkusTransaction.requiringNew().call(() -> Transfer.count()));
+    }
+}
@@ -0,0 +1,26 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Records every LowStockChanged as it is fired, committed or not
+@ApplicationScoped
+public class LowStockEvents {
+
+    private final Queue<LowStockChanged> events = new ConcurrentLinkedQueue<>();
+
+    void onLowStockChanged(@Observes LowStockChanged event) {
+        events.add(event);
+    }
+
+    public List<LowStockChanged> drain() {
+        List<LowStockChanged> drained = new ArrayList<>(events);
+        events.clear();
+        return drained;
+    }
+}
@@ -0,0 +1,20 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@QuarkusTest
+class OptimisticStockContentionTest extends StockContention {
+
+    @Test
+    void concurrentOutTransfers() throws Exception {
+        Result result = run();
+
+        // conflicting transfers are rejected, but every accepted one is written and moved the stock exactly once
+        assertEquals(THREADS * TRANSFERS_PER_THREAD, result.succeeded() + result.failed());
+        assertEquals(result.succeeded(), result.transfers());
+        assertEquals(INITIAL_STOCK - result.transferred(), result.finalStock());
+    }
+}
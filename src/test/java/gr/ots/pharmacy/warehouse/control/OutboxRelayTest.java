@@ -0,0 +1,98 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import gr.ots.pharmacy.warehouse.boundary.TransferCreateDTO;
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import gr.ots.pharmacy.warehouse.entity.Transfer;
+import gr.ots.pharmacy.warehouse.entity.TransferOutbox;
+import gr.ots.pharmacy.warehouse.entity.TransferType;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+class OutboxRelayTest {
+
+    @Inject
+    OutboxRelay outboxRelay;
+
+    @Inject
+    WarehouseService warehouseService;
+
+    @Inject
+    Flyway flyway;
+
+    @Inject
+    CountCache countCache;
+
+    @Inject
+    CatalogueCache catalogueCache;
+
+    @ConfigProperty(name = "warehouse.outbox.file")
+    String path;
+
+    @BeforeEach
+    void clean() throws IOException {
+        flyway.clean();
+        flyway.migrate();
+        countCache.invalidate();
+        catalogueCache.evictAll();
+        Files.deleteIfExists(Path.of(path));
+    }
+
+    @Test
+    void relayCommittedTransfers() throws IOException {
+        Drug drug = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 100, 42));
+        Transfer transfer = warehouseService.createTransfer(TransferType.OUT, drug.id.intValue(), 10);
+        List<TransferBatchResult> batch = warehouseService.createTransfers(List.of(
+                new TransferCreateDTO(TransferType.IN, drug.id.intValue(), 5),
+                new TransferCreateDTO(TransferType.OUT, drug.id.intValue(), 1000),
+                new TransferCreateDTO(TransferType.OUT, drug.id.intValue(), 1)));
+
+        // a rolled back transfer leaves no outbox row, a rejected batch line neither
+        assertThrows(IllegalArgumentException.class, () -> warehouseService.createTransfer(TransferType.OUT, drug.id.intValue(), 1000));
+        assertEquals(3, pending());
+
+        assertEquals(3, outboxRelay.relay());
+        assertEquals(0, pending());
+
+        List<String> lines = Files.readAllLines(Path.of(path));
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("\"id\":" + transfer.id));
+        assertTrue(lines.get(0).contains("\"drugCode\":\"TEST001\""));
+        assertTrue(lines.get(1).contains("\"id\":" + batch.get(0).transferId()));
+        assertTrue(lines.get(2).contains("\"id\":" + batch.get(2).transferId()));
+
+        // only rows added since are read again
+        assertEquals(0, outboxRelay.relay());
+        warehouseService.createTransfer(TransferType.IN, drug.id.intValue(), 1);
+        assertEquals(1, outboxRelay.relay());
+        assertEquals(4, Files.readAllLines(Path.of(path)).size());
+    }
+
+    @Test
+    void backoffDoublesUpToTheMaximum() {
+        Duration max = Duration.ofMinutes(5);
+        assertEquals(Duration.ofSeconds(1), OutboxRelay.backoff(1, max));
+        assertEquals(Duration.ofSeconds(8), OutboxRelay.backoff(4, max));
+        assertEquals(max, OutboxRelay.backoff(10, max));
+        assertEquals(max, OutboxRelay.backoff(1000, max));
+    }
+
+    private static long pending() {
+        return QuarkusTransaction.requiringNew().call(() -> TransferOutbox.count());
+    }
+}
@@ -0,0 +1,85 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import gr.ots.pharmacy.warehouse.entity.Transfer;
+import gr.ots.pharmacy.warehouse.entity.TransferType;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.inject.Inject;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs the same workload, concurrent OUT transfers of one drug, against the configured stock update mode. Only the
+// outcome is checked here, the throughput of each mode is measured by StockContentionBenchmark in src/bench
+abstract class StockContention {
+
+    static final int THREADS = 8;
+    static final int TRANSFERS_PER_THREAD = 10;
+    static final int INITIAL_STOCK = THREADS * TRANSFERS_PER_THREAD;
+
+    @Inject
+    WarehouseService warehouseService;
+
+    @Inject
+    Flyway flyway;
+
+    @Inject
+    CountCache countCache;
+
+    @Inject
+    CatalogueCache catalogueCache;
+
+    @BeforeEach
+    void clean() {
+        flyway.clean();
+        flyway.migrate();
+        countCache.invalidate();
+        catalogueCache.evictAll();
+    }
+
+    // transferred is the quantity of the transfers that were written, finalStock what the drug row says
+    record Result(int succeeded, int failed, int finalStock, long transfers, long transferred) {
+    }
+
+    Result run() throws Exception {
+        long drugId = warehouseService.createDrug(new DrugCreateDTO("Hot Drug", "HOT001", new BigDecimal("1.00"), INITIAL_STOCK, 42)).id;
+
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < TRANSFERS_PER_THREAD; j++) {
+                    try {
+                        warehouseService.createTransfer(TransferType.OUT, (int) drugId, 1);
+                        succeeded.incrementAndGet();
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        return QuarkusTransaction.requiringNew().call(() -> new Result(succeeded.get(), failed.get(),
+                Drug.<Drug>findById(drugId).getStock(),
+                Transfer.count("drug.id", drugId),
+                Transfer.<Transfer>list("drug.id", drugId).stream().mapToLong(Transfer::getQuantity).sum()));
+    }
+}
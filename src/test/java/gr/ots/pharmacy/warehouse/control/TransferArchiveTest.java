@@ -0,0 +1,172 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import gr.ots.pharmacy.warehouse.boundary.TransferCreateDTO;
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import gr.ots.pharmacy.warehouse.entity.Transfer;
+import gr.ots.pharmacy.warehouse.entity.TransferType;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.panache.common.Sort;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.flywaydb.core.Flyway;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+class TransferArchiveTest {
+
+    @Inject
+    WarehouseService warehouseService;
+
+    @Inject
+    TransferArchive transferArchive;
+
+    @Inject
+    Flyway flyway;
+
+    @Inject
+    CountCache countCache;
+
+    @Inject
+    CatalogueCache catalogueCache;
+
+    @Inject
+    SessionFactory sessionFactory;
+
+    @BeforeEach
+    void clean() {
+        flyway.clean();
+        flyway.migrate();
+        countCache.invalidate();
+        catalogueCache.evictAll();
+    }
+
+    @Test
+    void testListingsSpanPartitions() {
+        long drugId = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 100, 42)).id;
+        List<TransferCreateDTO> lines = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            lines.add(new TransferCreateDTO(TransferType.IN, (int) drugId, 1));
+        }
+        warehouseService.createTransfers(lines);
+
+        // transfer i happened i days ago, so the expected listing order is the id order
+        Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        List<Long> ids = QuarkusTransaction.requiringNew().call(() -> Transfer.<Transfer>listAll(Sort.ascending("id")).stream()
+                .map(transfer -> transfer.id)
+                .toList());
+        QuarkusTransaction.requiringNew().run(() -> {
+            for (int i = 0; i < ids.size(); i++) {
+                Transfer.getEntityManager()
+                        .createNativeQuery("UPDATE TRANSFER SET TRANSFER_DATE = ?1, CREATED_AT = ?1 WHERE ID = ?2")
+                        .setParameter(1, now.minus(i, ChronoUnit.DAYS))
+                        .setParameter(2, ids.get(i))
+                        .executeUpdate();
+            }
+            Transfer.getEntityManager()
+                    .createNativeQuery("UPDATE DRUG SET CREATED_AT = ?1 WHERE ID = ?2")
+                    .setParameter(1, now.minus(20, ChronoUnit.DAYS))
+                    .setParameter(2, drugId)
+                    .executeUpdate();
+        });
+        catalogueCache.evictAll();
+        assertEquals(ids, pageByOffset(null, null));
+
+        assertEquals(5, transferArchive.archive(now.minus(4, ChronoUnit.DAYS).minus(12, ChronoUnit.HOURS)));
+        assertEquals(0, transferArchive.archive(now.minus(5, ChronoUnit.DAYS)));
+        assertEquals(5, QuarkusTransaction.requiringNew().call(() -> Transfer.count()));
+
+        // unbounded listings merge both partitions in the original order, by offset and by cursor
+        assertEquals(ids, pageByOffset(null, null));
+        assertEquals(ids, pageByCursor(null, null));
+        assertEquals(ids, warehouseService.getTransfers(PageRequest.of(1, 10), null, null, null).items().stream()
+                .map(transfer -> transfer.id)
+                .toList());
+        assertEquals(10, warehouseService.getTransferViews(PageRequest.of(1, 3), null, null, null).totalItems());
+
+        Statistics statistics = sessionFactory.getStatistics();
+
+        // the watermark, then only the hot partition overlaps
+        statistics.clear();
+        assertEquals(ids.subList(0, 3), ids(now.minus(2, ChronoUnit.DAYS), null));
+        assertEquals(2, statistics.getPrepareStatementCount());
+
+        // only the archive overlaps
+        statistics.clear();
+        assertEquals(ids.subList(6, 9), ids(now.minus(8, ChronoUnit.DAYS), now.minus(6, ChronoUnit.DAYS)));
+        assertEquals(2, statistics.getPrepareStatementCount());
+
+        // both overlap
+        statistics.clear();
+        assertEquals(ids.subList(3, 7), ids(now.minus(6, ChronoUnit.DAYS), now.minus(3, ChronoUnit.DAYS)));
+        assertEquals(3, statistics.getPrepareStatementCount());
+        assertEquals(ids.subList(3, 7), pageByCursor(now.minus(6, ChronoUnit.DAYS), now.minus(3, ChronoUnit.DAYS)));
+
+        // archived rows still count for the stock at a past instant
+        assertEquals(100, warehouseService.getStockAt(drugId, now.minus(10, ChronoUnit.DAYS)).stock());
+        assertEquals(105, warehouseService.getStockAt(drugId, now.minus(5, ChronoUnit.DAYS)).stock());
+    }
+
+    @Test
+    void testIdempotencyKeyOutlivesArchiving() {
+        long drugId = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 100, 42)).id;
+        long transferId = warehouseService.createTransfer(TransferType.IN, (int) drugId, 5, "order-1").id;
+
+        Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        QuarkusTransaction.requiringNew().run(() -> Transfer.getEntityManager()
+                .createNativeQuery("UPDATE TRANSFER SET TRANSFER_DATE = ?1 WHERE ID = ?2")
+                .setParameter(1, now.minus(10, ChronoUnit.DAYS))
+                .setParameter(2, transferId)
+                .executeUpdate());
+        assertEquals(1, transferArchive.archive(now.minus(5, ChronoUnit.DAYS)));
+
+        // the replay is answered from the archive, without a second transfer or stock update
+        assertEquals(transferId, warehouseService.createTransfer(TransferType.IN, (int) drugId, 5, "order-1").id);
+        assertEquals(0, QuarkusTransaction.requiringNew().call(() -> Transfer.count()));
+        assertEquals(105, QuarkusTransaction.requiringNew().call(() -> Drug.<Drug>findById(drugId).getStock()));
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> warehouseService.createTransfer(TransferType.OUT, (int) drugId, 5, "order-1"));
+        assertEquals("Idempotency-Key was already used for a different transfer", exception.getMessage());
+    }
+
+    private List<Long> ids(Instant from, Instant to) {
+        return warehouseService.getTransferViews(new PageRequest(1, 10, null, false), null, from, to).items().stream()
+                .map(TransferView::id)
+                .toList();
+    }
+
+    private List<Long> pageByOffset(Instant from, Instant to) {
+        List<Long> ids = new ArrayList<>();
+        PagedResult<TransferView> page;
+        int number = 1;
+        do {
+            page = warehouseService.getTransferViews(new PageRequest(number++, 3, null, false), null, from, to);
+            page.items().forEach(view -> ids.add(view.id()));
+        } while (page.hasNext());
+        return ids;
+    }
+
+    private List<Long> pageByCursor(Instant from, Instant to) {
+        List<Long> ids = new ArrayList<>();
+        PagedResult<TransferView> page;
+        String cursor = null;
+        do {
+            page = warehouseService.getTransferViews(new PageRequest(1, 3, cursor, false), null, from, to);
+            page.items().forEach(view -> ids.add(view.id()));
+            cursor = page.nextCursor();
+        } while (page.hasNext());
+        return ids;
+    }
+}
@@ -0,0 +1,137 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import gr.ots.pharmacy.warehouse.entity.Transfer;
+import gr.ots.pharmacy.warehouse.entity.TransferType;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+@TestProfile(TransferFeedTest.SmallFeedProfile.class)
+class TransferFeedTest {
+
+    public static class SmallFeedProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("warehouse.feed.replay-size", "4",
+                    "warehouse.feed.client-buffer", "2");
+        }
+    }
+
+    @Inject
+    TransferFeed transferFeed;
+
+    @Inject
+    WarehouseService warehouseService;
+
+    @Inject
+    Flyway flyway;
+
+    @Inject
+    CountCache countCache;
+
+    @Inject
+    CatalogueCache catalogueCache;
+
+    @BeforeEach
+    void clean() {
+        flyway.clean();
+        flyway.migrate();
+        countCache.invalidate();
+        catalogueCache.evictAll();
+    }
+
+    @Test
+    void replayAfterLastSequence() throws InterruptedException {
+        long first = transferFeed.publish(view(1L));
+        transferFeed.publish(view(2L));
+        long third = transferFeed.publish(view(1L));
+
+        try (TransferFeed.Subscription subscription = transferFeed.subscribe(first, List.of(1L))) {
+            assertFalse(subscription.isReset());
+            TransferFeed.Entry entry = subscription.poll(1, TimeUnit.SECONDS);
+            assertEquals(third, entry.sequence());
+            assertEquals(1L, entry.transfer().drugId());
+            assertNull(subscription.poll(10, TimeUnit.MILLISECONDS));
+
+            // live entries continue after the replay, with the same filter
+            transferFeed.publish(view(2L));
+            long fifth = transferFeed.publish(view(1L));
+            assertEquals(fifth, subscription.poll(1, TimeUnit.SECONDS).sequence());
+        }
+    }
+
+    @Test
+    void resetOutsideTheRing() {
+        long last = transferFeed.publish(view(1L));
+
+        try (TransferFeed.Subscription subscription = transferFeed.subscribe(last, null)) {
+            assertFalse(subscription.isReset());
+        }
+        try (TransferFeed.Subscription subscription = transferFeed.subscribe(last + 1, null)) {
+            assertTrue(subscription.isReset());
+        }
+
+        // the ring only keeps the last 4 entries
+        for (int i = 0; i < 4; i++) {
+            transferFeed.publish(view(1L));
+        }
+        try (TransferFeed.Subscription subscription = transferFeed.subscribe(last, null)) {
+            assertTrue(subscription.isReset());
+        }
+        try (TransferFeed.Subscription subscription = transferFeed.subscribe(last + 1, null)) {
+            assertFalse(subscription.isReset());
+        }
+    }
+
+    @Test
+    void slowSubscriptionOverflows() throws InterruptedException {
+        try (TransferFeed.Subscription subscription = transferFeed.subscribe(null, null)) {
+            transferFeed.publish(view(1L));
+            transferFeed.publish(view(1L));
+            transferFeed.publish(view(1L));
+
+            // the buffered entries are given up, the consumer reconnects with its last sequence
+            assertSame(TransferFeed.OVERFLOW, subscription.poll(1, TimeUnit.SECONDS));
+            transferFeed.publish(view(1L));
+            assertNull(subscription.poll(10, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    void publishedAfterCommit() throws InterruptedException {
+        Drug drug = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 100, 42));
+
+        try (TransferFeed.Subscription subscription = transferFeed.subscribe(null, List.of(drug.id))) {
+            Transfer transfer = warehouseService.createTransfer(TransferType.OUT, drug.id.intValue(), 10);
+
+            TransferView published = subscription.poll(1, TimeUnit.SECONDS).transfer();
+            assertEquals(transfer.id, published.id());
+            assertEquals("TEST001", published.drugCode());
+            assertEquals(10, published.quantity());
+
+            // a rolled back transfer never reaches the feed
+            assertThrows(IllegalArgumentException.class, () -> warehouseService.createTransfer(TransferType.OUT, drug.id.intValue(), 1000));
+            assertNull(subscription.poll(10, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private static TransferView view(Long drugId) {
+        Instant now = Instant.now();
+        return new TransferView(1L, TransferType.IN, 1, now, now, drugId, "CODE", "Name");
+    }
+}
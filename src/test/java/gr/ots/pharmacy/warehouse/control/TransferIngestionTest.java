@@ -0,0 +1,102 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import gr.ots.pharmacy.warehouse.boundary.TransferCreateDTO;
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import gr.ots.pharmacy.warehouse.entity.Transfer;
+import gr.ots.pharmacy.warehouse.entity.TransferType;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+@TestProfile(TransferIngestionTest.IngestionProfile.class)
+class TransferIngestionTest {
+
+    public static class IngestionProfile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("warehouse.ingestion.enabled", "true",
+                    "warehouse.ingestion.shards", "2",
+                    "warehouse.ingestion.max-batch", "50");
+        }
+    }
+
+    @Inject
+    WarehouseService warehouseService;
+
+    @Inject
+    TransferIngestion transferIngestion;
+
+    @Inject
+    Flyway flyway;
+
+    @Inject
+    CountCache countCache;
+
+    @Inject
+    CatalogueCache catalogueCache;
+
+    @BeforeEach
+    void clean() {
+        flyway.clean();
+        flyway.migrate();
+        countCache.invalidate();
+        catalogueCache.evictAll();
+    }
+
+    @Test
+    void queuedTransfersAreWrittenInOrder() throws InterruptedException {
+        long drugId = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 100, 42)).id;
+
+        List<IngestionStatus> accepted = new ArrayList<>();
+        for (int i = 0; i < 101; i++) {
+            IngestionStatus status = transferIngestion.submit(new TransferCreateDTO(TransferType.OUT, (int) drugId, 1));
+            assertNotNull(status);
+            assertEquals(IngestionStatus.State.QUEUED, status.state());
+            accepted.add(status);
+        }
+        IngestionStatus unknownDrug = transferIngestion.submit(new TransferCreateDTO(TransferType.IN, 999, 1));
+
+        List<IngestionStatus> outcomes = new ArrayList<>();
+        for (IngestionStatus status : accepted) {
+            outcomes.add(await(status.trackingId()));
+        }
+
+        // one writer per shard keeps submission order, so exactly the last OUT transfer finds no stock left
+        for (int i = 0; i < 100; i++) {
+            assertEquals(IngestionStatus.State.CREATED, outcomes.get(i).state());
+            assertNotNull(outcomes.get(i).transferId());
+        }
+        assertEquals(IngestionStatus.State.REJECTED, outcomes.get(100).state());
+        assertEquals("Insufficient stock", outcomes.get(100).error());
+        assertEquals("Drug not found", await(unknownDrug.trackingId()).error());
+
+        assertEquals(0, QuarkusTransaction.requiringNew().call(() -> Drug.<Drug>findById(drugId).getStock()));
+        assertEquals(100, QuarkusTransaction.requiringNew().call(() -> Transfer.count()));
+        assertNull(transferIngestion.status("unknown"));
+    }
+
+    private IngestionStatus await(String trackingId) throws InterruptedException {
+        for (int attempt = 0; attempt < 500; attempt++) {
+            IngestionStatus status = transferIngestion.status(trackingId);
+            if (status.state() != IngestionStatus.State.QUEUED) {
+                return status;
+            }
+            Thread.sleep(10);
+        }
+        return fail("Transfer " + trackingId + " was not written");
+    }
+}
@@ -0,0 +1,165 @@
+package gr.ots.pharmacy.warehouse.control;
+
+import gr.ots.pharmacy.warehouse.boundary.DrugCreateDTO;
+import gr.ots.pharmacy.warehouse.boundary.TransferCreateDTO;
+import gr.ots.pharmacy.warehouse.entity.Drug;
+import gr.ots.pharmacy.warehouse.entity.Transfer;
+import gr.ots.pharmacy.warehouse.entity.TransferType;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Runs every read of the service over both transfer partitions, with and without totals, and fails if H2 plans any
+// statement Hibernate sent as a full scan of TRANSFER or TRANSFER_ARCHIVE. The unfiltered totals read a whole table by
+// definition, instead of their plan it is checked that CountCache ran each of them once however often it was asked.
+@QuarkusTest
+class TransferQueryPlanTest {
+
+    private static final Pattern TRANSFER_FULL_SCAN = Pattern.compile("\\bPUBLIC\\.TRANSFER(_ARCHIVE)?\\.tableScan\\b");
+
+    @Inject
+    WarehouseService warehouseService;
+
+    @Inject
+    TransferArchive transferArchive;
+
+    @Inject
+    CapturingStatementInspector statementInspector;
+
+    @Inject
+    DataSource dataSource;
+
+    @Inject
+    Flyway flyway;
+
+    @Inject
+    CountCache countCache;
+
+    @Inject
+    CatalogueCache catalogueCache;
+
+    @BeforeEach
+    void clean() {
+        flyway.clean();
+        flyway.migrate();
+        countCache.invalidate();
+        catalogueCache.evictAll();
+    }
+
+    @Test
+    void testTransferQueriesUseIndexes() throws SQLException {
+        long drugId = warehouseService.createDrug(new DrugCreateDTO("Test Drug", "TEST001", new BigDecimal("10.99"), 100, 42)).id;
+        long otherDrugId = warehouseService.createDrug(new DrugCreateDTO("Other Drug", "OTHER001", new BigDecimal("1.99"), 100, 42)).id;
+        List<TransferCreateDTO> transfers = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            transfers.add(new TransferCreateDTO(TransferType.IN, (int) (i % 2 == 0 ? drugId : otherDrugId), 1));
+        }
+        warehouseService.createTransfers(transfers);
+
+        // the older half goes to the archive, so that every listing below reads one or both partitions
+        Instant now = Instant.now();
+        QuarkusTransaction.requiringNew().run(() -> Transfer.getEntityManager()
+                .createNativeQuery("UPDATE TRANSFER SET TRANSFER_DATE = ?1 WHERE MOD(ID, 2) = 0")
+                .setParameter(1, now.minus(10, ChronoUnit.DAYS))
+                .executeUpdate());
+        transferArchive.archive(now.minus(5, ChronoUnit.DAYS));
+        analyze();
+
+        List<List<Long>> drugFilters = Arrays.asList(null, List.of(drugId), List.of(drugId, otherDrugId));
+        List<Instant> froms = Arrays.asList(null, now.minus(20, ChronoUnit.DAYS), now.minus(1, ChronoUnit.DAYS));
+        List<Instant> tos = Arrays.asList(null, now.minus(7, ChronoUnit.DAYS), now.plus(1, ChronoUnit.DAYS));
+
+        statementInspector.start();
+        for (List<Long> drugIds : drugFilters) {
+            for (Instant from : froms) {
+                for (Instant to : tos) {
+                    for (boolean withTotals : new boolean[]{true, false}) {
+                        PagedResult<TransferView> first = warehouseService.getTransferViews(new PageRequest(1, 10, null, withTotals), drugIds, from, to);
+                        warehouseService.getTransferViews(new PageRequest(1, 10, first.nextCursor(), withTotals), drugIds, from, to);
+                        warehouseService.getTransferViews(new PageRequest(2, 10, null, withTotals), drugIds, from, to);
+                        PagedResult<Transfer> entities = warehouseService.getTransfers(new PageRequest(1, 10, null, withTotals), drugIds, from, to);
+                        warehouseService.getTransfers(new PageRequest(1, 10, entities.nextCursor(), withTotals), drugIds, from, to);
+                        warehouseService.getTransfers(new PageRequest(2, 10, null, withTotals), drugIds, from, to);
+                    }
+                }
+            }
+        }
+        PagedResult<Drug> drugs = warehouseService.getAllDrugs(PageRequest.of(1, 10));
+        warehouseService.getAllDrugs(new PageRequest(1, 10, drugs.nextCursor()));
+        warehouseService.getLowStockDrugs(PageRequest.of(1, 10));
+        warehouseService.searchDrugs("TEST", PageRequest.of(1, 10));
+        warehouseService.getStockAt(drugId, now.minus(7, ChronoUnit.DAYS));
+        warehouseService.getStockAt(drugId, now);
+        warehouseService.getTransferSummary(List.of(drugId), LocalDate.now(ZoneOffset.UTC).minusDays(30), LocalDate.now(ZoneOffset.UTC), SummaryGranularity.DAY);
+        List<String> statements = statementInspector.stop();
+
+        assertFalse(statements.isEmpty());
+
+        List<String> fullScans = new ArrayList<>();
+        List<String> wholeTableCounts = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection()) {
+            for (String sql : new LinkedHashSet<>(statements)) {
+                String normalized = sql.strip().toLowerCase(Locale.ROOT);
+                if (normalized.startsWith("select count(") && !normalized.contains(" where ")) {
+                    wholeTableCounts.add(sql);
+                    continue;
+                }
+                String plan = explain(connection, sql);
+                if (TRANSFER_FULL_SCAN.matcher(plan).find()) {
+                    fullScans.add(plan);
+                }
+            }
+        }
+
+        assertTrue(fullScans.isEmpty(), () -> "Full scans on TRANSFER:\n" + String.join("\n\n", fullScans));
+        // every later unfiltered listing was answered by CountCache
+        assertFalse(wholeTableCounts.isEmpty());
+        for (String sql : wholeTableCounts) {
+            assertEquals(1, Collections.frequency(statements, sql), sql);
+        }
+    }
+
+    private void analyze() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE");
+        }
+    }
+
+    // H2 prepares EXPLAIN without requiring values for the ? placeholders
+    private static String explain(Connection connection, String sql) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql);
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                plan.append(resultSet.getString(1));
+            }
+        }
+        return plan.toString();
+    }
+}